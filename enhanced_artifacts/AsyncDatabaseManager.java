@@ -0,0 +1,334 @@
+/**
+ * Christopher Carnell
+ *
+ * This class is an asynchronous facade over DatabaseManager.
+ * Every call runs on a background thread from DatabaseExecutors and returns a CompletableFuture,
+ * so activities and adapters never block the UI thread on SQLite I/O.
+ * Results can be delivered back to the main thread through a Callback.
+ * Every call's latency is recorded in Metrics under "db.<method>".
+ */
+
+package com.cs360.weightwatcher;
+
+import android.app.Activity;
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs DatabaseManager operations off the main thread.
+ * Writes go to the single writer thread; reads go to the reader pool.
+ */
+public class AsyncDatabaseManager {
+
+    private static final String TAG = "AsyncDatabaseManager";
+
+    private final DatabaseManager dbManager;
+    private final DatabaseExecutors executors;
+    private final Metrics metrics;
+
+    // Completes once the database is open; every call is chained after it
+    private volatile CompletableFuture<Void> opened = CompletableFuture.completedFuture(null);
+
+    /**
+     * Receives the result of a background database call on the main thread.
+     *
+     * @param <T> The result type.
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+
+        default void onError(Throwable error) {
+            Log.e(TAG, "Background database call failed.", error);
+        }
+    }
+
+    public AsyncDatabaseManager(Context context) {
+        this(new DatabaseManager(context));
+    }
+
+    public AsyncDatabaseManager(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.executors = DatabaseExecutors.getInstance();
+        this.metrics = Metrics.getInstance();
+    }
+
+    /**
+     * @return The wrapped synchronous DatabaseManager, for use on background threads only.
+     */
+    public DatabaseManager getDatabaseManager() {
+        return dbManager;
+    }
+
+    /**
+     * Opens the database on the writer thread. Calls made before it completes wait for it.
+     */
+    public CompletableFuture<Void> open() {
+        opened = submit(executors.writer(), () -> timed("open", () -> {
+            dbManager.open();
+            return null;
+        }));
+        return opened;
+    }
+
+    /**
+     * Closes the database on the writer thread, after any writes already queued.
+     */
+    public CompletableFuture<Void> close() {
+        return write("close", () -> {
+            dbManager.close();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Long> registerUser(String username, PasswordHash passwordHash) {
+        return write("registerUser", () -> dbManager.registerUser(username, passwordHash));
+    }
+
+    /**
+     * Logs in a user: one lookup by username on a reader thread, then one verify on the password hashing thread.
+     * If the password matches a legacy or lower-cost hash, it is re-hashed with the current parameters and
+     * stored in the background; the login does not wait for that.
+     * Cancelling the returned future skips the verify if it has not started yet.
+     *
+     * @param username The entered username.
+     * @param password The entered plain-text password.
+     * @return A future with the User if the credentials are valid, or null otherwise.
+     */
+    public CompletableFuture<User> loginUser(String username, String password) {
+        PasswordHasher passwordHasher = PasswordHasher.getInstance();
+        CompletableFuture<User> login = new CompletableFuture<>();
+
+        read("getUserByUsername", () -> dbManager.getUserByUsername(username)).thenCompose(user -> {
+            // Unknown users are still verified against a decoy hash so they take as long as known ones
+            CompletableFuture<Boolean> verify = passwordHasher.verify(password, user != null ? user.getPasswordHash() : null);
+            login.whenComplete((result, error) -> verify.cancel(false));
+            return verify.thenApply(matches -> {
+                if (!matches) {
+                    return null;
+                }
+                if (user.getPasswordHash() != null && user.getPasswordHash().needsRehash()) {
+                    upgradePasswordHash(passwordHasher, user.getId(), password);
+                }
+                return user;
+            });
+        }).whenComplete((user, error) -> {
+            if (error != null) {
+                login.completeExceptionally(error);
+            } else {
+                login.complete(user);
+            }
+        });
+        return login;
+    }
+
+    /**
+     * Re-hashes a verified password with the current parameters and stores it on the writer thread.
+     */
+    private void upgradePasswordHash(PasswordHasher passwordHasher, long userId, String password) {
+        passwordHasher.hash(password)
+                .thenCompose(passwordHash -> write("updatePasswordHash", () -> dbManager.updatePasswordHash(userId, passwordHash)))
+                .whenComplete((rows, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "Failed to upgrade password hash for user ID: " + userId, error);
+                    }
+                });
+    }
+
+    public CompletableFuture<User> getUserByUsername(String username) {
+        return read("getUserByUsername", () -> dbManager.getUserByUsername(username));
+    }
+
+    public CompletableFuture<Integer> updateGoalWeight(long userId, double goalWeight) {
+        return write("updateGoalWeight", () -> dbManager.updateGoalWeight(userId, goalWeight));
+    }
+
+    public CompletableFuture<Double> getGoalWeight(long userId) {
+        return read("getGoalWeight", () -> dbManager.getGoalWeight(userId));
+    }
+
+    public CompletableFuture<Long> addWeightEntry(long userId, String date, double weight) {
+        return write("addWeightEntry", () -> dbManager.addWeightEntry(userId, date, weight));
+    }
+
+    public CompletableFuture<BulkInsertResult> addWeightEntries(List<WeightEntry> entries) {
+        return write("addWeightEntries", () -> dbManager.addWeightEntries(entries));
+    }
+
+    public CompletableFuture<List<WeightEntry>> getWeightEntries(long userId) {
+        return read("getWeightEntries", () -> dbManager.getWeightEntries(userId));
+    }
+
+    public CompletableFuture<WeightEntrySeries> getWeightEntriesPage(long userId, WeightEntry anchor, int pageSize) {
+        return read("getWeightEntriesPage", () -> dbManager.getWeightEntriesPage(userId, anchor, pageSize));
+    }
+
+    public CompletableFuture<WeightEntrySeries> getWeightEntriesBetween(long userId, long fromEpochDay, long toEpochDay) {
+        return read("getWeightEntriesBetween", () -> dbManager.getWeightEntriesBetween(userId, fromEpochDay, toEpochDay));
+    }
+
+    public CompletableFuture<WeightEntrySeries> getLatestWeightEntries(long userId, int count) {
+        return read("getLatestWeightEntries", () -> dbManager.getLatestWeightEntries(userId, count));
+    }
+
+    public CompletableFuture<WeightEntry> getLatestWeightEntryOnOrBefore(long userId, long epochDay) {
+        return read("getLatestWeightEntryOnOrBefore", () -> dbManager.getLatestWeightEntryOnOrBefore(userId, epochDay));
+    }
+
+    public CompletableFuture<WeightEntry> getLatestWeightEntry(long userId) {
+        return read("getLatestWeightEntry", () -> dbManager.getLatestWeightEntry(userId));
+    }
+
+    public CompletableFuture<Integer> deleteWeightEntry(long entryId) {
+        return write("deleteWeightEntry", () -> dbManager.deleteWeightEntry(entryId));
+    }
+
+    public CompletableFuture<Integer> deleteWeightEntries(long[] entryIds) {
+        return write("deleteWeightEntries", () -> dbManager.deleteWeightEntries(entryIds));
+    }
+
+    public CompletableFuture<WeightStats> getWeightStats(long userId) {
+        return read("getWeightStats", () -> dbManager.getWeightStats(userId));
+    }
+
+    public CompletableFuture<List<WeightBucket>> getWeightSeries(long userId, long fromEpochDay, long toEpochDay,
+                                                             WeightBucket.Resolution resolution) {
+        return read("getWeightSeries", () -> dbManager.getWeightSeries(userId, fromEpochDay, toEpochDay, resolution));
+    }
+
+    public CompletableFuture<Integer> updateUserPhoneNumber(long userId, String phoneNumber) {
+        return write("updateUserPhoneNumber", () -> dbManager.updateUserPhoneNumber(userId, phoneNumber));
+    }
+
+    public CompletableFuture<String> getUserPhoneNumber(long userId) {
+        return read("getUserPhoneNumber", () -> dbManager.getUserPhoneNumber(userId));
+    }
+
+    public CompletableFuture<Long> enqueueSms(long userId, String dedupeKey, String message, long nowMillis) {
+        return write("enqueueSms", () -> dbManager.enqueueSms(userId, dedupeKey, message, nowMillis));
+    }
+
+    public CompletableFuture<List<OutboxMessage>> getDueSmsMessages(long nowMillis, int limit) {
+        return read("getDueSmsMessages", () -> dbManager.getDueSmsMessages(nowMillis, limit));
+    }
+
+    public CompletableFuture<Integer> updateSmsStatus(long messageId, int status, int attempts, long nextAttemptAt) {
+        return write("updateSmsStatus", () -> dbManager.updateSmsStatus(messageId, status, attempts, nextAttemptAt));
+    }
+
+    public CompletableFuture<Long> getNextSmsAttemptTime() {
+        return read("getNextSmsAttemptTime", () -> dbManager.getNextSmsAttemptTime());
+    }
+
+    public CompletableFuture<Integer> deleteFinishedSmsMessages(long cutoffMillis) {
+        return write("deleteFinishedSmsMessages", () -> dbManager.deleteFinishedSmsMessages(cutoffMillis));
+    }
+
+    /**
+     * Streams the user's history to CSV on a reader thread.
+     *
+     * @return A future holding the number of entries written.
+     */
+    public CompletableFuture<Long> exportWeightEntries(long userId, WritableByteChannel channel) {
+        return read("exportWeightEntries", () -> {
+            try {
+                return new WeightCsvExporter(dbManager).export(userId, channel);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Imports CSV rows for the user on the writer thread, one transaction per batch.
+     *
+     * @return A future holding the number of rows inserted and rejected.
+     */
+    public CompletableFuture<BulkInsertResult> importWeightEntries(long userId, ReadableByteChannel channel) {
+        return write("importWeightEntries", () -> {
+            try {
+                return new WeightCsvImporter(dbManager).importFrom(userId, channel);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Delivers the result of a future to a callback on the main thread.
+     *
+     * @param future   The pending database call.
+     * @param callback The callback to run on the main thread.
+     */
+    public <T> void deliver(CompletableFuture<T> future, Callback<T> callback) {
+        future.whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                callback.onError(error);
+            } else {
+                callback.onResult(result);
+            }
+        }, executors.mainThread());
+    }
+
+    /**
+     * Delivers the result of a future to a callback on the main thread.
+     * The callback is skipped if the owning activity has been destroyed in the meantime.
+     *
+     * @param owner    The activity that receives the result.
+     * @param future   The pending database call.
+     * @param callback The callback to run on the main thread.
+     */
+    public <T> void deliver(Activity owner, CompletableFuture<T> future, Callback<T> callback) {
+        future.whenCompleteAsync((result, error) -> {
+            if (owner.isFinishing() || owner.isDestroyed()) {
+                return;
+            }
+            if (error != null) {
+                callback.onError(error);
+            } else {
+                callback.onResult(result);
+            }
+        }, executors.mainThread());
+    }
+
+    private <T> CompletableFuture<T> read(String name, Supplier<T> task) {
+        return opened.thenApplyAsync(ignored -> timed(name, task), executors.readers());
+    }
+
+    private <T> CompletableFuture<T> write(String name, Supplier<T> task) {
+        return opened.thenApplyAsync(ignored -> timed(name, task), executors.writer());
+    }
+
+    /**
+     * Runs a DatabaseManager call, recording its latency under "db.<name>" and any exception it throws
+     * under "db.<name>.errors". This is the one place database calls are timed.
+     */
+    private <T> T timed(String name, Supplier<T> task) {
+        try (Metrics.Timer timer = metrics.time("db." + name)) {
+            return task.get();
+        } catch (RuntimeException e) {
+            metrics.counter("db." + name + ".errors").increment();
+            throw e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> submit(Executor executor, Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Database executor queue is full.", e);
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+}
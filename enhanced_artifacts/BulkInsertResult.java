@@ -0,0 +1,32 @@
+/**
+ * Christopher Carnell
+ *
+ * This model class reports the outcome of a bulk insert of weight entries.
+ * It records how many rows were inserted and how many were rejected by validation or constraints.
+ */
+
+package com.cs360.weightwatcher;
+
+public class BulkInsertResult {
+    private final int insertedCount;
+    private final int rejectedCount;
+
+    public BulkInsertResult(int insertedCount, int rejectedCount) {
+        this.insertedCount = insertedCount;
+        this.rejectedCount = rejectedCount;
+    }
+
+    /**
+     * Combines this result with another, e.g. when an import is committed in several batches.
+     *
+     * @param other The result of another batch.
+     * @return A new result holding the summed counts.
+     */
+    public BulkInsertResult plus(BulkInsertResult other) {
+        return new BulkInsertResult(insertedCount + other.insertedCount, rejectedCount + other.rejectedCount);
+    }
+
+    //getters
+    public int getInsertedCount() { return insertedCount; }
+    public int getRejectedCount() { return rejectedCount; }
+}
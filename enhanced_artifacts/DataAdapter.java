@@ -3,31 +3,43 @@
  *
  * This adapter class is used to bind weight entry data to the RecyclerView in DataDisplayActivity.
  * It manages the display of weight entries in a list format.
- * It handles user interactions such as deleting entries from the list and the database.
+ * It handles user interactions such as selecting entries with a long press and deleting them.
+ * Deletes are handed to a listener as one batch, so selecting many entries still costs a single database write.
  */
 
 package com.cs360.weightwatcher;
 
 import android.app.AlertDialog;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
-import android.widget.Toast;
 import android.widget.Button;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
-import java.util.List;
+
+import java.util.HashSet;
+import java.util.Set;
 
 public class DataAdapter extends RecyclerView.Adapter<DataAdapter.DataViewHolder> {
 
-    private final List<WeightEntry> weightEntries;
-    private final DatabaseManager dbManager;
+    /**
+     * Receives the entries the user confirmed for deletion.
+     */
+    public interface OnDeleteRequestedListener {
+        void onDeleteRequested(WeightEntrySeries entries);
+    }
+
+    private final WeightEntrySeries weightEntries;
+    private final OnDeleteRequestedListener deleteListener;
+
+    // IDs of the entries selected with a long press
+    private final Set<Long> selectedIds = new HashSet<>();
 
-    public DataAdapter(List<WeightEntry> weightEntries, DatabaseManager dbManager) {
+    public DataAdapter(WeightEntrySeries weightEntries, OnDeleteRequestedListener deleteListener) {
         this.weightEntries = weightEntries;
-        this.dbManager = dbManager;
+        this.deleteListener = deleteListener;
     }
 
     @NonNull
@@ -39,37 +51,54 @@ public class DataAdapter extends RecyclerView.Adapter<DataAdapter.DataViewHolder
 
     @Override
     public void onBindViewHolder(@NonNull DataViewHolder holder, int position) {
-        WeightEntry entry = weightEntries.get(position);
-        holder.textViewDate.setText(entry.getDate());
-        holder.textViewWeight.setText(String.valueOf(entry.getWeight()));
+        // Bind straight from the primitive columns; no WeightEntry is created per row
+        holder.textViewDate.setText(weightEntries.formatDate(position));
+        holder.textViewWeight.setText(String.valueOf(weightEntries.getWeight(position)));
 
-        // Delete button action with confirmation dialog and exception handling
+        holder.itemView.setActivated(selectedIds.contains(weightEntries.getId(position)));
+
+        // Long press toggles the entry's selection
+        holder.itemView.setOnLongClickListener(v -> {
+            int adapterPosition = holder.getAdapterPosition();
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return false;
+            }
+            long entryId = weightEntries.getId(adapterPosition);
+            if (!selectedIds.remove(entryId)) {
+                selectedIds.add(entryId);
+            }
+            notifyItemChanged(adapterPosition);
+            return true;
+        });
+
+        // Delete button action with confirmation dialog; deletes the selection if this entry is part of it,
+        // otherwise only this entry
         holder.buttonDelete.setOnClickListener(v -> {
             int adapterPosition = holder.getAdapterPosition();
             if (adapterPosition != RecyclerView.NO_POSITION) {
+                long entryId = weightEntries.getId(adapterPosition);
+                boolean deleteSelection = selectedIds.contains(entryId);
+                WeightEntrySeries batch;
+                if (deleteSelection) {
+                    batch = getSelectedEntries();
+                } else {
+                    batch = new WeightEntrySeries(weightEntries.getUserId());
+                    batch.add(entryId, weightEntries.getEpochDay(adapterPosition), weightEntries.getWeight(adapterPosition));
+                }
+                String message = batch.size() == 1
+                        ? "Are you sure you want to delete this entry?"
+                        : "Are you sure you want to delete these " + batch.size() + " entries?";
+
                 // Show confirmation dialog before deletion
                 new AlertDialog.Builder(v.getContext())
-                        .setTitle("Delete Entry")
-                        .setMessage("Are you sure you want to delete this entry?")
+                        .setTitle(batch.size() == 1 ? "Delete Entry" : "Delete Entries")
+                        .setMessage(message)
                         .setPositiveButton("Yes", (dialog, which) -> {
-                            try {
-                                // Get the WeightEntry to delete
-                                WeightEntry entryToDelete = weightEntries.get(adapterPosition);
-
-                                // Delete from database
-                                int result = dbManager.deleteWeightEntry(entryToDelete.getId());
-                                if (result > 0) {
-                                    // Remove from list and notify adapter
-                                    weightEntries.remove(adapterPosition);
-                                    notifyItemRemoved(adapterPosition);
-                                    Toast.makeText(v.getContext(), "Entry deleted", Toast.LENGTH_SHORT).show();
-                                } else {
-                                    Toast.makeText(v.getContext(), "Failed to delete entry", Toast.LENGTH_SHORT).show();
-                                }
-                            } catch (Exception e) {
-                                Toast.makeText(v.getContext(), "An error occurred while deleting the entry", Toast.LENGTH_SHORT).show();
-                                Log.e("DataAdapter", "Error in onBindViewHolder ", e);
+                            if (deleteSelection) {
+                                // The deleted rows leave the list, so no selected row is left to rebind
+                                selectedIds.clear();
                             }
+                            deleteListener.onDeleteRequested(batch);
                         })
                         .setNegativeButton("No", null)
                         .show();
@@ -77,11 +106,63 @@ public class DataAdapter extends RecyclerView.Adapter<DataAdapter.DataViewHolder
         });
     }
 
+    /**
+     * Collects the selected entries that are still in the list.
+     *
+     * @return The selected entries, in list order.
+     */
+    private WeightEntrySeries getSelectedEntries() {
+        WeightEntrySeries selected = new WeightEntrySeries(weightEntries.getUserId());
+        if (selectedIds.isEmpty()) {
+            return selected;
+        }
+        for (int i = 0; i < weightEntries.size(); i++) {
+            if (selectedIds.contains(weightEntries.getId(i))) {
+                selected.append(weightEntries.getId(i), weightEntries.getEpochDay(i), weightEntries.getWeight(i));
+            }
+        }
+        return selected;
+    }
+
     @Override
     public int getItemCount() {
         return weightEntries.size();
     }
 
+    /**
+     * Computes the minimal set of changes between two entry series. Safe to call on a background thread.
+     * Entries are matched by ID and compared by date and weight.
+     *
+     * @param oldEntries The entries currently shown.
+     * @param newEntries The entries to show.
+     * @return The diff to dispatch to this adapter once the new entries are in place.
+     */
+    public static DiffUtil.DiffResult calculateDiff(WeightEntrySeries oldEntries, WeightEntrySeries newEntries) {
+        // Both lists are already sorted the same way, so move detection is unnecessary
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldEntries.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newEntries.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldEntries.getId(oldPosition) == newEntries.getId(newPosition);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return oldEntries.getEpochDay(oldPosition) == newEntries.getEpochDay(newPosition)
+                        && Double.compare(oldEntries.getWeight(oldPosition), newEntries.getWeight(newPosition)) == 0;
+            }
+        }, false);
+    }
+
     public static class DataViewHolder extends RecyclerView.ViewHolder {
 
         public TextView textViewDate;
@@ -0,0 +1,134 @@
+/**
+ * Christopher Carnell
+ *
+ * This class publishes committed data changes to the screens that show that data.
+ * DatabaseManager publishes an event after each successful write transaction, from whichever background
+ * thread ran it, and every subscriber receives the events for its user on the main thread, in commit order.
+ * Screens apply the change to what they already show instead of re-querying the whole history,
+ * and changes made by any other screen or by a background import reach them the same way.
+ * Process-wide caches register a commit listener instead, which sees every user's events synchronously
+ * on the publishing thread, before any screen is told about them.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Process-wide bus of DataChangeEvents.
+ */
+public final class DataChangeBus {
+
+    private static final String TAG = "DataChangeBus";
+
+    /**
+     * Receives change events on the main thread.
+     */
+    public interface Listener {
+        void onDataChanged(DataChangeEvent event);
+    }
+
+    private static volatile DataChangeBus instance;
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Listener> commitListeners = new CopyOnWriteArrayList<>();
+    private final Executor mainThread;
+
+    private DataChangeBus(Executor mainThread) {
+        this.mainThread = mainThread;
+    }
+
+    /**
+     * @return The shared bus, created on first use.
+     */
+    public static DataChangeBus getInstance() {
+        if (instance == null) {
+            synchronized (DataChangeBus.class) {
+                if (instance == null) {
+                    instance = new DataChangeBus(DatabaseExecutors.getInstance().mainThread());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Subscribes to the changes of one user. Dispose the subscription when the subscriber goes away,
+     * e.g. in onDestroy; events that were already posted are then dropped.
+     *
+     * @param userId   The user whose changes to receive.
+     * @param listener Called on the main thread for each change.
+     * @return The subscription.
+     */
+    public Subscription subscribe(long userId, Listener listener) {
+        Subscription subscription = new Subscription(userId, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Registers a listener for every user's changes, called synchronously on the thread that publishes them.
+     * It runs before the main-thread subscribers are notified, so it must be quick and must not touch the UI.
+     *
+     * @param listener The listener, kept for the life of the process.
+     */
+    public void addCommitListener(Listener listener) {
+        commitListeners.add(listener);
+    }
+
+    /**
+     * Publishes a change. Must only be called after the change has been committed. Safe to call from any thread.
+     *
+     * @param event The change.
+     */
+    public void publish(DataChangeEvent event) {
+        for (Listener listener : commitListeners) {
+            try {
+                listener.onDataChanged(event);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Commit listener failed to handle " + event, e);
+            }
+        }
+        for (Subscription subscription : subscriptions) {
+            if (subscription.userId == event.getUserId()) {
+                mainThread.execute(() -> subscription.deliver(event));
+            }
+        }
+    }
+
+    /**
+     * A registered listener.
+     */
+    public final class Subscription {
+        private final long userId;
+        private final Listener listener;
+        private volatile boolean disposed;
+
+        private Subscription(long userId, Listener listener) {
+            this.userId = userId;
+            this.listener = listener;
+        }
+
+        /**
+         * Stops delivery, including of events that were published but not delivered yet.
+         */
+        public void dispose() {
+            disposed = true;
+            subscriptions.remove(this);
+        }
+
+        private void deliver(DataChangeEvent event) {
+            if (disposed) {
+                return;
+            }
+            try {
+                listener.onDataChanged(event);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Listener failed to handle " + event, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Christopher Carnell
+ *
+ * This model class describes one committed change to a user's data, as published by DataChangeBus.
+ * Entry events carry the entry's ID, date and weight, so subscribers can apply the change to what they
+ * already show without re-querying. Bulk changes (e.g. a CSV import) are published as ENTRIES_CHANGED,
+ * which tells subscribers to reload. Goal milestones detected by GoalProgressEngine are published as
+ * MILESTONE_REACHED, with the latest entry and the goal weight they were reached at.
+ */
+
+package com.cs360.weightwatcher;
+
+public class DataChangeEvent {
+
+    /**
+     * What changed.
+     */
+    public enum Type {
+        ENTRY_INSERTED,
+        ENTRY_DELETED,
+        ENTRIES_CHANGED,
+        GOAL_CHANGED,
+        MILESTONE_REACHED
+    }
+
+    private final Type type;
+    private final long userId;
+    private final long entryId;
+    private final long epochDay;
+    private final double weight;
+    private final double goalWeight;
+    private final GoalMilestone milestone;
+
+    private DataChangeEvent(Type type, long userId, long entryId, long epochDay, double weight, double goalWeight) {
+        this(type, userId, entryId, epochDay, weight, goalWeight, null);
+    }
+
+    private DataChangeEvent(Type type, long userId, long entryId, long epochDay, double weight, double goalWeight,
+                            GoalMilestone milestone) {
+        this.type = type;
+        this.userId = userId;
+        this.entryId = entryId;
+        this.epochDay = epochDay;
+        this.weight = weight;
+        this.goalWeight = goalWeight;
+        this.milestone = milestone;
+    }
+
+    public static DataChangeEvent entryInserted(long userId, long entryId, long epochDay, double weight) {
+        return new DataChangeEvent(Type.ENTRY_INSERTED, userId, entryId, epochDay, weight, 0);
+    }
+
+    public static DataChangeEvent entryDeleted(long userId, long entryId, long epochDay, double weight) {
+        return new DataChangeEvent(Type.ENTRY_DELETED, userId, entryId, epochDay, weight, 0);
+    }
+
+    public static DataChangeEvent entriesChanged(long userId) {
+        return new DataChangeEvent(Type.ENTRIES_CHANGED, userId, -1, 0, 0, 0);
+    }
+
+    public static DataChangeEvent goalChanged(long userId, double goalWeight) {
+        return new DataChangeEvent(Type.GOAL_CHANGED, userId, -1, 0, 0, goalWeight);
+    }
+
+    public static DataChangeEvent milestoneReached(long userId, GoalMilestone milestone, long epochDay, double weight, double goalWeight) {
+        return new DataChangeEvent(Type.MILESTONE_REACHED, userId, -1, epochDay, weight, goalWeight, milestone);
+    }
+
+    //getters
+    public Type getType() { return type; }
+    public long getUserId() { return userId; }
+    public long getEntryId() { return entryId; }
+    public long getEpochDay() { return epochDay; }
+    public double getWeight() { return weight; }
+    public double getGoalWeight() { return goalWeight; }
+    public GoalMilestone getMilestone() { return milestone; }
+
+    @Override
+    public String toString() {
+        return "DataChangeEvent{" + type + ", user=" + userId + ", entry=" + entryId + "}";
+    }
+}
@@ -4,7 +4,10 @@
  *
  * This activity displays the user's weight entries and goal weight.
  * Users can add new weight entries, view their weight history, and set or change their goal weight.
- * It checks for goal achievement and sends an SMS notification if the user has opted in and permissions are granted.
+ * The newest entries are shown on the first frame from a binary snapshot and then reconciled with the database.
+ * Deleted entries can be restored with Undo until the undo window closes and the deletes are committed in one batch.
+ * It announces goal milestones as they are committed and queues an SMS notification when the goal is reached,
+ * if the user has opted in and permissions are granted.
  * It also handles SMS permissions required for sending notifications.
  */
 
@@ -12,45 +15,73 @@ package com.cs360.weightwatcher;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.Manifest;
-import android.annotation.SuppressLint;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.Toast;
-import android.telephony.SmsManager;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.ArrayList;
+import com.google.android.material.snackbar.Snackbar;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
 
 public class DataDisplayActivity extends AppCompatActivity {
 
+    // How long the list must stay unchanged before the snapshot is rewritten
+    private static final long SNAPSHOT_WRITE_DELAY_MILLIS = 2000;
+
     // Goal Weight UI Components
     private TextView textViewGoalWeight;
 
-    // Data list for RecyclerView
-    private List<WeightEntry> weightEntries;
+    // Sorted data list for RecyclerView
+    private WeightEntrySeries weightEntries;
     private DataAdapter dataAdapter;
-
-    private DatabaseManager dbManager;
+    private WeightEntryPageLoader pageLoader;
+    private PendingDeleteQueue pendingDeletes;
+    private Snackbar undoSnackbar;
+
+    // When the current load started, for the load latency metric
+    private long loadStartNanos;
+
+    // Snapshot of the newest entries, shown before the database answers and rewritten once changes settle
+    private File snapshotFile;
+    private final Handler snapshotHandler = new Handler(Looper.getMainLooper());
+    private final Runnable snapshotWriteTask = this::writeSnapshot;
+    private boolean snapshotDirty;
+    // Snapshot generation the list was loaded at, and the one the reload in flight started at
+    private long snapshotGeneration;
+    private long reloadGeneration;
+
+    private AsyncDatabaseManager dbManager;
+    // Entry reads and writes go through the process-wide cache
+    private WeightEntryRepository repository;
     private long userId;
 
+    // Committed changes to this user's data, from this screen or any other
+    private DataChangeBus.Subscription changeSubscription;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_data_display);
 
-        // Initialize DatabaseManager
-        dbManager = new DatabaseManager(this);
+        // Initialize DatabaseManager; all database calls run off the main thread
+        dbManager = new AsyncDatabaseManager(this);
         dbManager.open();
+        repository = WeightEntryRepository.getInstance(this);
 
         // Get user ID from intent
         userId = getIntent().getLongExtra("user_id", -1);
@@ -69,16 +100,68 @@ public class DataDisplayActivity extends AppCompatActivity {
         textViewGoalWeight = findViewById(R.id.textViewGoalWeight);
         ImageButton buttonChangeGoal = findViewById(R.id.buttonChangeGoal);
 
-        // Initialize data list
-        weightEntries = new ArrayList<>();
+        // Initialize data list, starting from the snapshot if there is one; the first reload reconciles it
+        weightEntries = new WeightEntrySeries(userId);
+        snapshotFile = WeightSeriesSnapshot.fileFor(this, userId);
+        snapshotGeneration = WeightSeriesSnapshot.generation(userId);
+        long snapshotStartNanos = System.nanoTime();
+        WeightEntrySeries snapshot = WeightSeriesSnapshot.read(snapshotFile, userId);
+        if (snapshot != null) {
+            // Leave out entries whose delete is still pending from before a configuration change
+            weightEntries.replaceAll(repository.removeHidden(snapshot));
+            Metrics.getInstance().histogram("ui.readSnapshot").recordNanos(System.nanoTime() - snapshotStartNanos);
+        }
 
         // Set layout manager
         recyclerViewData.setLayoutManager(new LinearLayoutManager(this));
 
         // Initialize adapter with weightEntries
-        dataAdapter = new DataAdapter(weightEntries, dbManager);
+        dataAdapter = new DataAdapter(weightEntries, entries -> pendingDeletes.delete(entries));
         recyclerViewData.setAdapter(dataAdapter);
 
+        // Deletes wait out the undo window, then are committed together
+        pendingDeletes = new PendingDeleteQueue(this, dbManager, repository, weightEntries, dataAdapter, new PendingDeleteQueue.Listener() {
+            @Override
+            public void onPendingChanged(int pendingCount) {
+                showUndoSnackbar(pendingCount);
+                scheduleSnapshotWrite();
+            }
+
+            @Override
+            public void onCommitFailed(int count) {
+                Toast.makeText(DataDisplayActivity.this, "Failed to delete " + count + " entries", Toast.LENGTH_SHORT).show();
+                // The entries are still in the database, so bring the list back in line with it
+                loadWeightEntries();
+            }
+        });
+
+        // Load older entries page by page as the user scrolls
+        pageLoader = new WeightEntryPageLoader(this, dbManager, repository, userId, weightEntries, new WeightEntryPageLoader.Listener() {
+            @Override
+            public void onPageLoaded(int positionStart, int itemCount) {
+                dataAdapter.notifyItemRangeInserted(positionStart, itemCount);
+                if (positionStart < WeightSeriesSnapshot.MAX_ENTRIES) {
+                    scheduleSnapshotWrite();
+                }
+            }
+
+            @Override
+            public void onReloaded(DiffUtil.DiffResult diff) {
+                diff.dispatchUpdatesTo(dataAdapter);
+                // Time from the load request until the rows are on screen, including the query and the diff
+                Metrics.getInstance().histogram("ui.loadWeightEntries").recordNanos(System.nanoTime() - loadStartNanos);
+                snapshotGeneration = reloadGeneration;
+                scheduleSnapshotWrite();
+            }
+        });
+        recyclerViewData.addOnScrollListener(pageLoader.createScrollListener());
+
+        // Bring back the undo window for deletes still pending from before a configuration change
+        pendingDeletes.restore();
+
+        // Apply changes as they are committed instead of reloading; subscribe before the first load so none are missed
+        changeSubscription = DataChangeBus.getInstance().subscribe(userId, this::onDataChanged);
+
         // Add Entry button click
         buttonAddEntry.setOnClickListener(view -> showAddEntryDialog());
 
@@ -97,19 +180,24 @@ public class DataDisplayActivity extends AppCompatActivity {
      * If not set, prompts the user to set it.
      */
     private void checkAndDisplayGoalWeight() {
-        try {
-            Double goalWeight = dbManager.getGoalWeight(userId);
-            if (goalWeight <= 0) {
-                // Goal weight not set, prompt the user
-                showSetGoalDialog();
-            } else {
-                // Goal weight is set, display it
-                textViewGoalWeight.setText(String.valueOf(goalWeight));
+        dbManager.deliver(this, dbManager.getGoalWeight(userId), new AsyncDatabaseManager.Callback<Double>() {
+            @Override
+            public void onResult(Double goalWeight) {
+                if (goalWeight <= 0) {
+                    // Goal weight not set, prompt the user
+                    showSetGoalDialog();
+                } else {
+                    // Goal weight is set, display it
+                    textViewGoalWeight.setText(String.valueOf(goalWeight));
+                }
             }
-        } catch (Exception e) {
-            Toast.makeText(this, "Failed to retrieve goal weight", Toast.LENGTH_SHORT).show();
-            Log.e("DataDisplayActivity", "Error retrieving goal weight for user ID: " + userId, e);
-        }
+
+            @Override
+            public void onError(Throwable error) {
+                Toast.makeText(DataDisplayActivity.this, "Failed to retrieve goal weight", Toast.LENGTH_SHORT).show();
+                Log.e("DataDisplayActivity", "Error retrieving goal weight for user ID: " + userId, error);
+            }
+        });
     }
 
     /**
@@ -118,20 +206,24 @@ public class DataDisplayActivity extends AppCompatActivity {
     private void showSetGoalDialog() {
         SetGoalDialog setGoalDialog = new SetGoalDialog();
         setGoalDialog.setOnGoalSetListener(goalWeight -> {
-            try {
-                // Save the goal weight to the database
-                int result = dbManager.updateGoalWeight(userId, goalWeight);
-                if (result > 0) {
-                    // Update the displayed goal weight
-                    textViewGoalWeight.setText(String.valueOf(goalWeight));
-                    Toast.makeText(DataDisplayActivity.this, "Goal weight set to " + goalWeight, Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(DataDisplayActivity.this, "Failed to set goal weight", Toast.LENGTH_SHORT).show();
+            // Save the goal weight to the database
+            dbManager.deliver(this, dbManager.updateGoalWeight(userId, goalWeight), new AsyncDatabaseManager.Callback<Integer>() {
+                @Override
+                public void onResult(Integer result) {
+                    if (result > 0) {
+                        // The displayed goal weight is updated by the GOAL_CHANGED change event
+                        Toast.makeText(DataDisplayActivity.this, "Goal weight set to " + goalWeight, Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(DataDisplayActivity.this, "Failed to set goal weight", Toast.LENGTH_SHORT).show();
+                    }
                 }
-            } catch (Exception e) {
-                Toast.makeText(DataDisplayActivity.this, "An error occurred while setting goal weight", Toast.LENGTH_SHORT).show();
-                Log.e("DataDisplayActivity", "Error setting goal weight for user ID: " + userId, e);
-            }
+
+                @Override
+                public void onError(Throwable error) {
+                    Toast.makeText(DataDisplayActivity.this, "An error occurred while setting goal weight", Toast.LENGTH_SHORT).show();
+                    Log.e("DataDisplayActivity", "Error setting goal weight for user ID: " + userId, error);
+                }
+            });
         });
         setGoalDialog.show(getSupportFragmentManager(), "SetGoalDialog");
     }
@@ -142,130 +234,207 @@ public class DataDisplayActivity extends AppCompatActivity {
     private void showAddEntryDialog() {
         AddEntryDialog addEntryDialog = new AddEntryDialog();
         addEntryDialog.setUserId(userId);
-        addEntryDialog.setOnEntryAddedListener(weightEntry -> {
-            try {
-                long entryId = dbManager.addWeightEntry(weightEntry.getUserId(), weightEntry.getDate(), weightEntry.getWeight());
-
-                if (entryId != -1) {
-                    weightEntry.setId(entryId);
-
-                    // Insert the new entry in sorted order
-                    int insertPosition = findInsertPosition(weightEntry);
-                    weightEntries.add(insertPosition, weightEntry);
-                    dataAdapter.notifyItemInserted(insertPosition);
+        addEntryDialog.setOnEntryAddedListener(weightEntry -> dbManager.deliver(this,
+                repository.addWeightEntry(weightEntry.getUserId(), weightEntry.getDate(), weightEntry.getWeight()),
+                new AsyncDatabaseManager.Callback<Long>() {
+                    @Override
+                    public void onResult(Long entryId) {
+                        // The list and any goal milestone are updated by the ENTRY_INSERTED and MILESTONE_REACHED change events
+                        if (entryId == -1) {
+                            Toast.makeText(DataDisplayActivity.this, "Failed to add weight entry", Toast.LENGTH_SHORT).show();
+                        }
+                    }
 
-                    // Check if goal weight is reached
-                    checkGoalAchievement(weightEntry.getWeight());
-                } else {
-                    Toast.makeText(DataDisplayActivity.this, "Failed to add weight entry", Toast.LENGTH_SHORT).show();
-                }
-            } catch (Exception e) {
-                Toast.makeText(DataDisplayActivity.this, "An error occurred while adding weight entry", Toast.LENGTH_SHORT).show();
-                Log.e("DataDisplayActivity", "Error adding weight entry for user ID: " + userId, e);
-            }
-        });
+                    @Override
+                    public void onError(Throwable error) {
+                        Toast.makeText(DataDisplayActivity.this, "An error occurred while adding weight entry", Toast.LENGTH_SHORT).show();
+                        Log.e("DataDisplayActivity", "Error adding weight entry for user ID: " + userId, error);
+                    }
+                }));
         addEntryDialog.show(getSupportFragmentManager(), "AddEntryDialog");
     }
 
     /**
-     * Finds the correct position to insert the new weight entry to keep the list sorted.
-     *
-     * @param newEntry The new weight entry to insert.
-     * @return The index at which to insert the new entry.
-     */
-    private int findInsertPosition(WeightEntry newEntry) {
-        for (int i = 0; i < weightEntries.size(); i++) {
-            if (newEntry.compareTo(weightEntries.get(i)) > 0) {
-                return i;
-            }
-        }
-        return weightEntries.size();
-    }
-
-    /**
-     * Checks if the user has achieved their goal weight and sends an SMS notification if they have opted in.
+     * Announces a goal milestone and sends an SMS notification for reaching the goal if the user has opted in.
+     * Milestones are detected once per crossing when the entry is written, so nothing is re-queried here.
      *
-     * @param currentWeight The user's current weight.
+     * @param event The MILESTONE_REACHED event.
      */
-    private void checkGoalAchievement(double currentWeight) {
-        try {
-            double goalWeight = dbManager.getGoalWeight(userId);
-            if (goalWeight != -1 && currentWeight <= goalWeight) {
+    private void onMilestoneReached(DataChangeEvent event) {
+        switch (event.getMilestone()) {
+            case GOAL_REACHED: {
                 // User has reached or passed the goal weight
                 Toast.makeText(this, "Congratulations! You've reached your goal weight!", Toast.LENGTH_LONG).show();
 
                 // Check if user has opted in for SMS notifications
-                boolean smsOptIn = PreferenceUtils.isSmsOptIn(this, userId);
-
-                if (smsOptIn) {
-                    if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS)
-                            == PackageManager.PERMISSION_GRANTED) {
-                        sendSmsNotification();
-                    } else {
-                        // SMS permission not granted
-                        Toast.makeText(this, "SMS permission not granted. Unable to send notification.", Toast.LENGTH_SHORT).show();
+                dbManager.deliver(this, PreferenceUtils.isSmsOptIn(this, userId), smsOptIn -> {
+                    if (smsOptIn) {
+                        if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS)
+                                == PackageManager.PERMISSION_GRANTED) {
+                            sendSmsNotification(event);
+                        } else {
+                            // SMS permission not granted
+                            Toast.makeText(this, "SMS permission not granted. Unable to send notification.", Toast.LENGTH_SHORT).show();
+                        }
                     }
-                }
+                });
+                break;
             }
-        } catch (Exception e) {
-            Toast.makeText(this, "An error occurred while checking goal achievement", Toast.LENGTH_SHORT).show();
-            Log.e("DataDisplayActivity", "Error checking goal weight achievement for user ID: " + userId, e);
+            case PROGRESS_5:
+            case PROGRESS_10:
+            case PROGRESS_25:
+                Toast.makeText(this, "You're " + event.getMilestone().getPercent() + "% of the way to your goal weight!", Toast.LENGTH_LONG).show();
+                break;
+            case PLATEAU:
+                Toast.makeText(this, "Your weight has leveled off. Keep going, plateaus are normal!", Toast.LENGTH_LONG).show();
+                break;
         }
     }
 
     /**
-     * Loads the user's weight entries from the database and updates the RecyclerView.
+     * Loads (or reloads) the user's weight entries and updates the RecyclerView with only the rows that changed.
+     * Older pages are loaded by the page loader as the user scrolls.
      */
-    @SuppressLint("NotifyDataSetChanged")
     private void loadWeightEntries() {
-        try {
-            List<WeightEntry> entries = dbManager.getWeightEntries(userId);
-            weightEntries.clear();
-            weightEntries.addAll(entries);
+        loadStartNanos = System.nanoTime();
+        // Taken before the query, so the reloaded list includes every bulk change up to this generation
+        reloadGeneration = WeightSeriesSnapshot.generation(userId);
+        pageLoader.reload();
+    }
 
-            // Sort the entries
-            weightEntries.sort(Collections.reverseOrder());
+    /**
+     * Queues an SMS notification to the user upon reaching the goal weight.
+     * The dispatcher sends it in the background and drops repeats of the same crossing.
+     *
+     * @param event The GOAL_REACHED event, carrying the goal weight and the date it was reached.
+     */
+    private void sendSmsNotification(DataChangeEvent event) {
+        NotificationDispatcher.getInstance(this).notifyGoalReached(userId, event.getGoalWeight(), event.getEpochDay());
+        Log.d("SMS", "SMS notification queued for user ID: " + userId);
+    }
 
-            dataAdapter.notifyDataSetChanged();
-        } catch (Exception e) {
-            Toast.makeText(this, "Failed to load weight entries", Toast.LENGTH_SHORT).show();
-            Log.e("DataDisplayActivity", "Error loading weight entries for user ID: " + userId, e);
+    /**
+     * Shows how many deletes are pending with an Undo action, or hides the snackbar once none are.
+     *
+     * @param pendingCount The number of pending deletes.
+     */
+    private void showUndoSnackbar(int pendingCount) {
+        if (pendingCount == 0) {
+            if (undoSnackbar != null) {
+                undoSnackbar.dismiss();
+                undoSnackbar = null;
+            }
+            return;
+        }
+        String message = pendingCount == 1 ? "Entry deleted" : pendingCount + " entries deleted";
+        if (undoSnackbar == null || !undoSnackbar.isShown()) {
+            undoSnackbar = Snackbar.make(findViewById(android.R.id.content), message, Snackbar.LENGTH_INDEFINITE)
+                    .setAction("Undo", view -> pendingDeletes.undo());
+            undoSnackbar.show();
+        } else {
+            undoSnackbar.setText(message);
         }
     }
 
     /**
-     * Sends an SMS notification to the user upon reaching the goal weight.
+     * Rewrites the snapshot once the list has stopped changing for SNAPSHOT_WRITE_DELAY_MILLIS.
      */
-    private void sendSmsNotification() {
-        try {
-            // Get user's phone number from the database
-            String phoneNumber = dbManager.getUserPhoneNumber(userId);
-            if (phoneNumber == null || phoneNumber.isEmpty()) {
-                Toast.makeText(this, "Phone number not available", Toast.LENGTH_SHORT).show();
-                Log.e("SMS", "Phone number is null or empty.");
-                return;
-            }
+    private void scheduleSnapshotWrite() {
+        snapshotDirty = true;
+        snapshotHandler.removeCallbacks(snapshotWriteTask);
+        snapshotHandler.postDelayed(snapshotWriteTask, SNAPSHOT_WRITE_DELAY_MILLIS);
+    }
 
-            String message = "Congratulations! You've reached your goal weight! Keep up the great work!";
+    /**
+     * Writes the newest entries of the list to the snapshot file on the writer thread.
+     */
+    private void writeSnapshot() {
+        snapshotHandler.removeCallbacks(snapshotWriteTask);
+        if (!snapshotDirty) {
+            return;
+        }
+        snapshotDirty = false;
+        if (snapshotGeneration != WeightSeriesSnapshot.generation(userId)) {
+            // A bulk change committed since the list was loaded; the reload writes the snapshot once it is applied
+            loadWeightEntries();
+            return;
+        }
 
-            // Log the attempt to send SMS
-            Log.d("SMS", "Attempting to send SMS to " + phoneNumber);
+        // Copy on the main thread; the list keeps changing while the file is written.
+        // The writer drops the copy if a bulk change commits before it gets to it.
+        WeightEntrySeries head = weightEntries.copyHead(WeightSeriesSnapshot.MAX_ENTRIES);
+        File file = snapshotFile;
+        long generation = snapshotGeneration;
+        try {
+            CompletableFuture.runAsync(() -> WeightSeriesSnapshot.write(file, head, generation), DatabaseExecutors.getInstance().writer());
+        } catch (RejectedExecutionException e) {
+            Log.e("DataDisplayActivity", "Unexpected error occurred in write snapshot.", e);
+        }
+    }
 
-            SmsManager smsManager = SmsManager.getDefault();
-            smsManager.sendTextMessage(phoneNumber, null, message, null, null);
-            Toast.makeText(this, "SMS notification sent to " + phoneNumber, Toast.LENGTH_SHORT).show();
+    /**
+     * Applies a committed change to the displayed list and goal weight. Called on the main thread.
+     *
+     * @param event The change.
+     */
+    private void onDataChanged(DataChangeEvent event) {
+        switch (event.getType()) {
+            case ENTRY_INSERTED: {
+                long entryId = event.getEntryId();
+                long epochDay = event.getEpochDay();
+                // Skip entries already shown (e.g. picked up by a reload) and entries older than the loaded pages
+                if (weightEntries.indexOf(epochDay, entryId) == -1
+                        && (weightEntries.insertionPoint(epochDay, entryId) < weightEntries.size() || !pageLoader.hasMore())) {
+                    int position = weightEntries.add(entryId, epochDay, event.getWeight());
+                    dataAdapter.notifyItemInserted(position);
+                    scheduleSnapshotWrite();
+                }
+                break;
+            }
+            case ENTRY_DELETED: {
+                int position = weightEntries.remove(event.getEpochDay(), event.getEntryId());
+                if (position != -1) {
+                    dataAdapter.notifyItemRemoved(position);
+                    scheduleSnapshotWrite();
+                }
+                break;
+            }
+            case ENTRIES_CHANGED:
+                // Bulk changes carry no per-entry details, so diff against a fresh query
+                loadWeightEntries();
+                break;
+            case GOAL_CHANGED:
+                textViewGoalWeight.setText(String.valueOf(event.getGoalWeight()));
+                break;
+            case MILESTONE_REACHED:
+                onMilestoneReached(event);
+                break;
+        }
+    }
 
-            // Log successful SMS send
-            Log.d("SMS", "SMS sent successfully to " + phoneNumber);
-        } catch (Exception e) {
-            Toast.makeText(this, "Failed to send SMS notification", Toast.LENGTH_SHORT).show();
-            Log.e("SMS", "Failed to send SMS", e);
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Leaving the screen for good closes the undo window; a rotation or a trip to another app does not
+        if (pendingDeletes != null && isFinishing()) {
+            pendingDeletes.flush();
+        }
+        // Save the latest list now rather than waiting for the delay; the next launch starts from it
+        if (snapshotFile != null) {
+            writeSnapshot();
         }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (changeSubscription != null) {
+            changeSubscription.dispose();
+        }
+        // A recreated screen picks the pending deletes up from the repository and restarts the undo window
+        if (pendingDeletes != null && !isFinishing()) {
+            pendingDeletes.release();
+        }
         dbManager.close();
     }
 }
@@ -0,0 +1,106 @@
+/**
+ * Christopher Carnell
+ *
+ * This class owns the background threads used for database work.
+ * Writes are serialized on a single writer thread so they never contend for the SQLite write lock,
+ * while reads run on a small bounded pool. Results are handed back to the UI through the main-thread executor.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide executors for database reads, database writes and main-thread delivery.
+ */
+public final class DatabaseExecutors {
+
+    // Bounds on queued work so a runaway caller fails fast instead of growing memory
+    private static final int WRITE_QUEUE_CAPACITY = 256;
+    private static final int READ_QUEUE_CAPACITY = 256;
+    private static final int READER_THREADS =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static volatile DatabaseExecutors instance;
+
+    private final ThreadPoolExecutor writeExecutor;
+    private final ThreadPoolExecutor readExecutor;
+    private final Executor mainThreadExecutor;
+
+    private DatabaseExecutors() {
+        writeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY), new DatabaseThreadFactory("db-writer"));
+        readExecutor = new ThreadPoolExecutor(READER_THREADS, READER_THREADS, 30L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(READ_QUEUE_CAPACITY), new DatabaseThreadFactory("db-reader"));
+        readExecutor.allowCoreThreadTimeOut(true);
+
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        mainThreadExecutor = mainHandler::post;
+    }
+
+    /**
+     * @return The shared executors, created on first use.
+     */
+    public static DatabaseExecutors getInstance() {
+        if (instance == null) {
+            synchronized (DatabaseExecutors.class) {
+                if (instance == null) {
+                    instance = new DatabaseExecutors();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return The single-threaded executor used for every database write.
+     */
+    public Executor writer() {
+        return writeExecutor;
+    }
+
+    /**
+     * @return The bounded executor used for database reads.
+     */
+    public Executor readers() {
+        return readExecutor;
+    }
+
+    /**
+     * @return An executor that runs tasks on the main thread.
+     */
+    public Executor mainThread() {
+        return mainThreadExecutor;
+    }
+
+    /**
+     * Creates named background-priority threads so database work never competes with rendering.
+     */
+    private static class DatabaseThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger threadCount = new AtomicInteger(1);
+
+        DatabaseThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, namePrefix + "-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -3,24 +3,35 @@
  *
  * This class extends SQLiteOpenHelper and is responsible for creating and updating the database schema.
  * It defines the tables and columns used in the database.
- * It handles the creation of the 'users' and 'entries' tables, manages database version upgrades,
- * adds indexes for performance, and enforces data integrity through constraints.
+ * It handles the creation of the 'users' and 'entries' tables, the 'user_stats' summary table and the
+ * trigger-maintained 'entry_rollups' table, the per-user 'user_settings' and 'goal_progress' tables and the
+ * 'sms_outbox' table, manages database version upgrades, adds indexes for performance, and enforces data integrity through constraints.
  */
 
 package com.cs360.weightwatcher;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class DatabaseHelper extends SQLiteOpenHelper {
     // Database name and version
-    private static final String DATABASE_NAME = "WeightWatcher.db";
-    private static final int DATABASE_VERSION = 3;
+    public static final String DATABASE_NAME = "WeightWatcher.db";
+    private static final int DATABASE_VERSION = 11;
 
     // Tables
     public static final String TABLE_USERS = "users";
     public static final String TABLE_ENTRIES = "entries";
+    public static final String TABLE_USER_STATS = "user_stats";
+    public static final String TABLE_ENTRY_ROLLUPS = "entry_rollups";
+    public static final String TABLE_USER_SETTINGS = "user_settings";
+    public static final String TABLE_SMS_OUTBOX = "sms_outbox";
+    public static final String TABLE_GOAL_PROGRESS = "goal_progress";
 
     // Common column
     public static final String COLUMN_ID = "_id";
@@ -30,12 +41,65 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_PASSWORD = "password";
     public static final String COLUMN_PHONE_NUMBER = "phone_number";
     public static final String COLUMN_GOAL_WEIGHT = "goal_weight";
+    // Password hash parameters; the hash itself is in the password column. Version 0 marks a legacy SHA-256 hash.
+    public static final String COLUMN_SALT = "salt";
+    public static final String COLUMN_HASH_VERSION = "hash_version";
+    public static final String COLUMN_HASH_ITERATIONS = "hash_iterations";
+    public static final String COLUMN_HASH_KEY_LENGTH = "hash_key_length";
 
     // Entries table columns
     public static final String COLUMN_USER_ID = "user_id";
     public static final String COLUMN_DATE = "date";
     public static final String COLUMN_WEIGHT = "weight";
 
+    // User stats table columns (keyed by user_id)
+    public static final String COLUMN_ENTRY_COUNT = "entry_count";
+    public static final String COLUMN_WEIGHT_SUM = "weight_sum";
+    public static final String COLUMN_MIN_WEIGHT = "min_weight";
+    public static final String COLUMN_MAX_WEIGHT = "max_weight";
+    public static final String COLUMN_LATEST_DATE = "latest_date";
+    public static final String COLUMN_LATEST_WEIGHT = "latest_weight";
+    public static final String COLUMN_AVERAGE_7_DAY = "average_7_day";
+    public static final String COLUMN_AVERAGE_30_DAY = "average_30_day";
+    public static final String COLUMN_TREND_WEIGHT = "trend_weight";
+    public static final String COLUMN_WEEKLY_RATE = "weekly_rate";
+
+    // Entry rollups table columns (also uses user_id, entry_count, weight_sum, min_weight and max_weight)
+    public static final String COLUMN_RESOLUTION = "resolution";
+    public static final String COLUMN_BUCKET_START = "bucket_start";
+    public static final String COLUMN_BUCKET_END = "bucket_end";
+
+    // User settings table columns (keyed by user_id)
+    public static final String COLUMN_SMS_OPT_IN = "sms_opt_in";
+    public static final String COLUMN_SMS_SETUP_COMPLETED = "sms_setup_completed";
+
+    // SMS outbox table columns (also uses _id and user_id)
+    public static final String COLUMN_DEDUPE_KEY = "dedupe_key";
+    public static final String COLUMN_MESSAGE = "message";
+    public static final String COLUMN_STATUS = "status";
+    public static final String COLUMN_ATTEMPTS = "attempts";
+    public static final String COLUMN_NEXT_ATTEMPT_AT = "next_attempt_at";
+    public static final String COLUMN_CREATED_AT = "created_at";
+
+    // Goal progress table columns (keyed by user_id; also uses goal_weight)
+    public static final String COLUMN_START_WEIGHT = "start_weight";
+    public static final String COLUMN_GOAL_STATE = "goal_state";
+    public static final String COLUMN_REACHED_DATE = "reached_date";
+    public static final String COLUMN_MILESTONES = "milestones";
+
+    // Goal states stored in the goal_state column, relative to the latest entry
+    public static final int GOAL_STATE_ABOVE = 0;
+    public static final int GOAL_STATE_BELOW = 1;
+
+    // SMS outbox states stored in the status column
+    public static final int SMS_STATUS_PENDING = 0;
+    public static final int SMS_STATUS_SENT = 1;
+    public static final int SMS_STATUS_FAILED = 2;
+
+    // Rollup resolutions stored in the resolution column
+    public static final String RESOLUTION_WEEK = "week";
+    public static final String RESOLUTION_MONTH = "month";
+
     // Create table statements with constraints and indexes
     private static final String CREATE_TABLE_USERS = "CREATE TABLE " + TABLE_USERS + " ("
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
@@ -43,6 +107,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + COLUMN_PASSWORD + " TEXT NOT NULL, "
             + COLUMN_PHONE_NUMBER + " TEXT, "
             + COLUMN_GOAL_WEIGHT + " REAL, "
+            + COLUMN_SALT + " BLOB, "
+            + COLUMN_HASH_VERSION + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_HASH_ITERATIONS + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_HASH_KEY_LENGTH + " INTEGER NOT NULL DEFAULT 0, "
             + "CHECK(" + COLUMN_GOAL_WEIGHT + " IS NULL OR " + COLUMN_GOAL_WEIGHT + " > 0)"
             + ");";
 
@@ -50,20 +118,123 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String CREATE_TABLE_ENTRIES = "CREATE TABLE " + TABLE_ENTRIES + " ("
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + COLUMN_USER_ID + " INTEGER NOT NULL, "
-            + COLUMN_DATE + " TEXT NOT NULL, "
+            + COLUMN_DATE + " INTEGER NOT NULL, "
             + COLUMN_WEIGHT + " REAL NOT NULL CHECK(" + COLUMN_WEIGHT + " > 0), "
             + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_ID + ") ON DELETE CASCADE ON UPDATE CASCADE"
             + ");";
 
+    private static final String CREATE_TABLE_USER_STATS = "CREATE TABLE " + TABLE_USER_STATS + " ("
+            + COLUMN_USER_ID + " INTEGER PRIMARY KEY, "
+            + COLUMN_ENTRY_COUNT + " INTEGER NOT NULL, "
+            + COLUMN_WEIGHT_SUM + " REAL NOT NULL, "
+            + COLUMN_MIN_WEIGHT + " REAL NOT NULL, "
+            + COLUMN_MAX_WEIGHT + " REAL NOT NULL, "
+            + COLUMN_LATEST_DATE + " INTEGER NOT NULL, "
+            + COLUMN_LATEST_WEIGHT + " REAL NOT NULL, "
+            + COLUMN_AVERAGE_7_DAY + " REAL NOT NULL, "
+            + COLUMN_AVERAGE_30_DAY + " REAL NOT NULL, "
+            + COLUMN_TREND_WEIGHT + " REAL NOT NULL, "
+            + COLUMN_WEEKLY_RATE + " REAL NOT NULL, "
+            + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_ID + ") ON DELETE CASCADE ON UPDATE CASCADE"
+            + ");";
+
+    private static final String CREATE_TABLE_ENTRY_ROLLUPS = "CREATE TABLE " + TABLE_ENTRY_ROLLUPS + " ("
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_RESOLUTION + " TEXT NOT NULL, "
+            + COLUMN_BUCKET_START + " INTEGER NOT NULL, "
+            + COLUMN_BUCKET_END + " INTEGER NOT NULL, "
+            + COLUMN_ENTRY_COUNT + " INTEGER NOT NULL, "
+            + COLUMN_WEIGHT_SUM + " REAL NOT NULL, "
+            + COLUMN_MIN_WEIGHT + " REAL NOT NULL, "
+            + COLUMN_MAX_WEIGHT + " REAL NOT NULL, "
+            + "PRIMARY KEY(" + COLUMN_USER_ID + ", " + COLUMN_RESOLUTION + ", " + COLUMN_BUCKET_START + "), "
+            + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_ID + ") ON DELETE CASCADE ON UPDATE CASCADE"
+            + ") WITHOUT ROWID;";
+
+    private static final String CREATE_TABLE_USER_SETTINGS = "CREATE TABLE " + TABLE_USER_SETTINGS + " ("
+            + COLUMN_USER_ID + " INTEGER PRIMARY KEY, "
+            + COLUMN_SMS_OPT_IN + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_SMS_SETUP_COMPLETED + " INTEGER NOT NULL DEFAULT 0, "
+            + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_ID + ") ON DELETE CASCADE ON UPDATE CASCADE"
+            + ");";
+
+    // One row per message; the unique (user_id, dedupe_key) pair makes enqueueing the same event twice a no-op
+    private static final String CREATE_TABLE_SMS_OUTBOX = "CREATE TABLE " + TABLE_SMS_OUTBOX + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_DEDUPE_KEY + " TEXT NOT NULL, "
+            + COLUMN_MESSAGE + " TEXT NOT NULL, "
+            + COLUMN_STATUS + " INTEGER NOT NULL DEFAULT " + SMS_STATUS_PENDING + ", "
+            + COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_NEXT_ATTEMPT_AT + " INTEGER NOT NULL, "
+            + COLUMN_CREATED_AT + " INTEGER NOT NULL, "
+            + "UNIQUE(" + COLUMN_USER_ID + ", " + COLUMN_DEDUPE_KEY + "), "
+            + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_ID + ") ON DELETE CASCADE ON UPDATE CASCADE"
+            + ");";
+
+    // reached_date is the epoch day of the entry that crossed the goal, or NULL while above it;
+    // milestones is a bit set of the GoalMilestone values already announced for this goal
+    private static final String CREATE_TABLE_GOAL_PROGRESS = "CREATE TABLE " + TABLE_GOAL_PROGRESS + " ("
+            + COLUMN_USER_ID + " INTEGER PRIMARY KEY, "
+            + COLUMN_GOAL_WEIGHT + " REAL NOT NULL, "
+            + COLUMN_START_WEIGHT + " REAL NOT NULL, "
+            + COLUMN_GOAL_STATE + " INTEGER NOT NULL, "
+            + COLUMN_REACHED_DATE + " INTEGER, "
+            + COLUMN_MILESTONES + " INTEGER NOT NULL DEFAULT 0, "
+            + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_ID + ") ON DELETE CASCADE ON UPDATE CASCADE"
+            + ");";
+
+    // Triggers keeping the weekly and monthly rollups in step with every insert and delete on entries.
+    // Inserts fold the new weight into its buckets; deletes back it out and only rescan the bucket's
+    // date range (a bounded index scan) when the deleted weight was the bucket's min or max.
+    private static final String CREATE_TRIGGER_ROLLUP_INSERT = "CREATE TRIGGER trg_entries_rollup_insert AFTER INSERT ON " + TABLE_ENTRIES + " BEGIN "
+            + rollupInsertSql(RESOLUTION_WEEK, weekStartSql("NEW." + COLUMN_DATE), weekEndSql("NEW." + COLUMN_DATE))
+            + rollupInsertSql(RESOLUTION_MONTH, monthStartSql("NEW." + COLUMN_DATE), monthEndSql("NEW." + COLUMN_DATE))
+            + "END;";
+
+    private static final String CREATE_TRIGGER_ROLLUP_DELETE = "CREATE TRIGGER trg_entries_rollup_delete AFTER DELETE ON " + TABLE_ENTRIES + " BEGIN "
+            + "UPDATE " + TABLE_ENTRY_ROLLUPS + " SET "
+            + COLUMN_ENTRY_COUNT + " = " + COLUMN_ENTRY_COUNT + " - 1, "
+            + COLUMN_WEIGHT_SUM + " = " + COLUMN_WEIGHT_SUM + " - OLD." + COLUMN_WEIGHT + ", "
+            + COLUMN_MIN_WEIGHT + " = CASE WHEN OLD." + COLUMN_WEIGHT + " <= " + COLUMN_MIN_WEIGHT
+            + " THEN COALESCE((SELECT MIN(" + COLUMN_WEIGHT + ")" + bucketEntriesSql() + "), " + COLUMN_MIN_WEIGHT + ") ELSE " + COLUMN_MIN_WEIGHT + " END, "
+            + COLUMN_MAX_WEIGHT + " = CASE WHEN OLD." + COLUMN_WEIGHT + " >= " + COLUMN_MAX_WEIGHT
+            + " THEN COALESCE((SELECT MAX(" + COLUMN_WEIGHT + ")" + bucketEntriesSql() + "), " + COLUMN_MAX_WEIGHT + ") ELSE " + COLUMN_MAX_WEIGHT + " END "
+            + "WHERE " + COLUMN_USER_ID + " = OLD." + COLUMN_USER_ID + " AND ("
+            + "(" + COLUMN_RESOLUTION + " = '" + RESOLUTION_WEEK + "' AND " + COLUMN_BUCKET_START + " = " + weekStartSql("OLD." + COLUMN_DATE) + ") OR "
+            + "(" + COLUMN_RESOLUTION + " = '" + RESOLUTION_MONTH + "' AND " + COLUMN_BUCKET_START + " = " + monthStartSql("OLD." + COLUMN_DATE) + ")); "
+            + "DELETE FROM " + TABLE_ENTRY_ROLLUPS + " WHERE " + COLUMN_USER_ID + " = OLD." + COLUMN_USER_ID + " AND " + COLUMN_ENTRY_COUNT + " <= 0; "
+            + "END;";
+
     // Index creation statements
+    // Covering index for history reads: rows for one user come out already in date order,
+    // and the weight (plus the implicit rowid) is read from the index without touching the table
+    private static final String CREATE_INDEX_USER_DATE = "CREATE INDEX idx_entries_user_date ON "
+            + TABLE_ENTRIES + "(" + COLUMN_USER_ID + ", " + COLUMN_DATE + " DESC, " + COLUMN_WEIGHT + ");";
+
+    // Lets WeightStatsEngine re-read a user's minimum or maximum weight with one seek instead of a scan
+    private static final String CREATE_INDEX_USER_WEIGHT = "CREATE INDEX idx_entries_user_weight ON "
+            + TABLE_ENTRIES + "(" + COLUMN_USER_ID + ", " + COLUMN_WEIGHT + ");";
+
+    // The dispatcher only ever looks for pending messages in due-time order
+    private static final String CREATE_INDEX_OUTBOX_DUE = "CREATE INDEX idx_sms_outbox_due ON "
+            + TABLE_SMS_OUTBOX + "(" + COLUMN_STATUS + ", " + COLUMN_NEXT_ATTEMPT_AT + ");";
+
+    // Version 3 indexes, only used by the version 3 upgrade and dropped again by version 4
     private static final String CREATE_INDEX_USER_ID = "CREATE INDEX idx_user_id ON "
             + TABLE_ENTRIES + "(" + COLUMN_USER_ID + ");";
 
     private static final String CREATE_INDEX_ENTRY_DATE = "CREATE INDEX idx_entry_date ON "
             + TABLE_ENTRIES + "(" + COLUMN_DATE + ");";
 
+    private final Context context;
+
+    // Set by the version 8 upgrade; the old preferences are cleared in onOpen, once the upgrade has committed
+    private boolean legacyPreferencesMigrated;
+
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
     }
 
     @Override
@@ -78,10 +249,20 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         // Create tables
         db.execSQL(CREATE_TABLE_USERS);
         db.execSQL(CREATE_TABLE_ENTRIES);
+        db.execSQL(CREATE_TABLE_USER_STATS);
+        db.execSQL(CREATE_TABLE_ENTRY_ROLLUPS);
+        db.execSQL(CREATE_TABLE_USER_SETTINGS);
+        db.execSQL(CREATE_TABLE_SMS_OUTBOX);
+        db.execSQL(CREATE_TABLE_GOAL_PROGRESS);
 
         // Create indexes
-        db.execSQL(CREATE_INDEX_USER_ID);
-        db.execSQL(CREATE_INDEX_ENTRY_DATE);
+        db.execSQL(CREATE_INDEX_USER_DATE);
+        db.execSQL(CREATE_INDEX_USER_WEIGHT);
+        db.execSQL(CREATE_INDEX_OUTBOX_DUE);
+
+        // Create triggers
+        db.execSQL(CREATE_TRIGGER_ROLLUP_INSERT);
+        db.execSQL(CREATE_TRIGGER_ROLLUP_DELETE);
     }
 
     @Override
@@ -121,5 +302,187 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
             db.execSQL("PRAGMA foreign_keys=ON;");
         }
+        if (oldVersion < 4) {
+            // Version 4 upgrade logic
+            // Dates move from "yyyy-MM-dd" TEXT to INTEGER epoch days, and the two single-column
+            // indexes are replaced by one covering index on (user_id, date DESC, weight)
+            db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " RENAME TO temp_" + TABLE_ENTRIES + ";");
+            db.execSQL(CREATE_TABLE_ENTRIES);
+
+            // julianday() - 2440587.5 is the number of days since 1970-01-01; rows with unparseable dates are dropped
+            db.execSQL("INSERT INTO " + TABLE_ENTRIES + " (" + COLUMN_ID + ", " + COLUMN_USER_ID + ", " + COLUMN_DATE + ", " + COLUMN_WEIGHT + ") "
+                    + "SELECT " + COLUMN_ID + ", " + COLUMN_USER_ID + ", "
+                    + "CASE WHEN typeof(" + COLUMN_DATE + ") = 'text' THEN CAST(julianday(" + COLUMN_DATE + ") - 2440587.5 AS INTEGER) ELSE " + COLUMN_DATE + " END, "
+                    + COLUMN_WEIGHT + " FROM temp_" + TABLE_ENTRIES
+                    + " WHERE typeof(" + COLUMN_DATE + ") <> 'text' OR julianday(" + COLUMN_DATE + ") IS NOT NULL;");
+
+            // Dropping the old table also drops idx_user_id and idx_entry_date
+            db.execSQL("DROP TABLE temp_" + TABLE_ENTRIES + ";");
+            db.execSQL(CREATE_INDEX_USER_DATE);
+        }
+        if (oldVersion < 5) {
+            // Version 5 upgrade logic
+            // Rows are filled in lazily by WeightStatsEngine the first time each user's stats are needed
+            db.execSQL(CREATE_TABLE_USER_STATS);
+        }
+        if (oldVersion < 6) {
+            // Version 6 upgrade logic
+            // Backfill the rollups from existing entries, then let the triggers maintain them
+            db.execSQL(CREATE_TABLE_ENTRY_ROLLUPS);
+            db.execSQL(rollupBackfillSql(RESOLUTION_WEEK, weekStartSql(COLUMN_DATE), weekEndSql(COLUMN_DATE)));
+            db.execSQL(rollupBackfillSql(RESOLUTION_MONTH, monthStartSql(COLUMN_DATE), monthEndSql(COLUMN_DATE)));
+            db.execSQL(CREATE_TRIGGER_ROLLUP_INSERT);
+            db.execSQL(CREATE_TRIGGER_ROLLUP_DELETE);
+        }
+        if (oldVersion < 7) {
+            // Version 7 upgrade logic
+            // Salt and hash parameters get their own columns. The version 3 upgrade creates the users table
+            // from the current definition, so the columns may already exist. Existing rows default to
+            // version 0 (legacy SHA-256) and are re-hashed on their next login.
+            addColumnIfMissing(db, TABLE_USERS, COLUMN_SALT, "BLOB");
+            addColumnIfMissing(db, TABLE_USERS, COLUMN_HASH_VERSION, "INTEGER NOT NULL DEFAULT 0");
+            addColumnIfMissing(db, TABLE_USERS, COLUMN_HASH_ITERATIONS, "INTEGER NOT NULL DEFAULT 0");
+            addColumnIfMissing(db, TABLE_USERS, COLUMN_HASH_KEY_LENGTH, "INTEGER NOT NULL DEFAULT 0");
+        }
+        if (oldVersion < 8) {
+            // Version 8 upgrade logic
+            // The SMS flags move out of SharedPreferences into their own table
+            db.execSQL(CREATE_TABLE_USER_SETTINGS);
+            migrateSmsPreferences(db);
+        }
+        if (oldVersion < 9) {
+            // Version 9 upgrade logic
+            db.execSQL(CREATE_TABLE_SMS_OUTBOX);
+            db.execSQL(CREATE_INDEX_OUTBOX_DUE);
+        }
+        if (oldVersion < 10) {
+            // Version 10 upgrade logic
+            // Rows are created by GoalProgressEngine on each user's next entry or goal change
+            db.execSQL(CREATE_TABLE_GOAL_PROGRESS);
+        }
+        if (oldVersion < 11) {
+            // Version 11 upgrade logic
+            db.execSQL(CREATE_INDEX_USER_WEIGHT);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (legacyPreferencesMigrated) {
+            legacyPreferencesMigrated = false;
+            context.getSharedPreferences(PreferenceUtils.LEGACY_PREFS_NAME, Context.MODE_PRIVATE).edit().clear().apply();
+        }
+    }
+
+    /**
+     * Copies the per-user SMS flags from the old "sms_opt_in_user_<id>" and "sms_setup_completed_user_<id>"
+     * preference keys into the user_settings table. Keys of users that no longer exist are skipped.
+     */
+    private void migrateSmsPreferences(SQLiteDatabase db) {
+        SharedPreferences preferences = context.getSharedPreferences(PreferenceUtils.LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+
+        // { sms_opt_in, sms_setup_completed } per user ID
+        Map<Long, boolean[]> flagsByUser = new HashMap<>();
+        for (Map.Entry<String, ?> preference : preferences.getAll().entrySet()) {
+            String key = preference.getKey();
+            int flag;
+            String userIdText;
+            if (key.startsWith(PreferenceUtils.LEGACY_KEY_SMS_OPT_IN_PREFIX)) {
+                flag = 0;
+                userIdText = key.substring(PreferenceUtils.LEGACY_KEY_SMS_OPT_IN_PREFIX.length());
+            } else if (key.startsWith(PreferenceUtils.LEGACY_KEY_SMS_SETUP_COMPLETED_PREFIX)) {
+                flag = 1;
+                userIdText = key.substring(PreferenceUtils.LEGACY_KEY_SMS_SETUP_COMPLETED_PREFIX.length());
+            } else {
+                continue;
+            }
+            if (!(preference.getValue() instanceof Boolean)) {
+                continue;
+            }
+            try {
+                long userId = Long.parseLong(userIdText);
+                flagsByUser.computeIfAbsent(userId, id -> new boolean[2])[flag] = (Boolean) preference.getValue();
+            } catch (NumberFormatException e) {
+                // Not a key this app wrote
+            }
+        }
+
+        String sql = "INSERT OR REPLACE INTO " + TABLE_USER_SETTINGS + " (" + COLUMN_USER_ID + ", " + COLUMN_SMS_OPT_IN + ", " + COLUMN_SMS_SETUP_COMPLETED + ") "
+                + "SELECT " + COLUMN_ID + ", ?, ? FROM " + TABLE_USERS + " WHERE " + COLUMN_ID + " = ?";
+        for (Map.Entry<Long, boolean[]> userFlags : flagsByUser.entrySet()) {
+            boolean[] flags = userFlags.getValue();
+            db.execSQL(sql, new Object[]{flags[0] ? 1 : 0, flags[1] ? 1 : 0, userFlags.getKey()});
+        }
+        legacyPreferencesMigrated = true;
+    }
+
+    /**
+     * Adds a column unless the table already has it.
+     */
+    private static void addColumnIfMissing(SQLiteDatabase db, String table, String column, String definition) {
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(nameIndex))) {
+                    return;
+                }
+            }
+        }
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition + ";");
+    }
+
+    // Bucket boundaries as SQL expressions over an epoch-day expression.
+    // Weeks start on Monday; epoch day 0 (1970-01-01) was a Thursday, hence the offset of 3.
+    // The "% 7 + 10) % 7" form keeps the result non-negative for dates before 1970.
+
+    private static String weekStartSql(String epochDay) {
+        return "(" + epochDay + " - ((" + epochDay + " % 7 + 10) % 7))";
+    }
+
+    private static String weekEndSql(String epochDay) {
+        return "(" + weekStartSql(epochDay) + " + 6)";
+    }
+
+    private static String monthStartSql(String epochDay) {
+        return "CAST(julianday(" + epochDay + " * 86400, 'unixepoch', 'start of month') - 2440587.5 AS INTEGER)";
+    }
+
+    private static String monthEndSql(String epochDay) {
+        return "CAST(julianday(" + epochDay + " * 86400, 'unixepoch', 'start of month', '+1 month', '-1 day') - 2440587.5 AS INTEGER)";
+    }
+
+    /**
+     * Trigger body statements that fold NEW.weight into one rollup bucket, creating the bucket if needed.
+     */
+    private static String rollupInsertSql(String resolution, String bucketStart, String bucketEnd) {
+        return "INSERT OR IGNORE INTO " + TABLE_ENTRY_ROLLUPS + " (" + COLUMN_USER_ID + ", " + COLUMN_RESOLUTION + ", " + COLUMN_BUCKET_START + ", " + COLUMN_BUCKET_END + ", "
+                + COLUMN_ENTRY_COUNT + ", " + COLUMN_WEIGHT_SUM + ", " + COLUMN_MIN_WEIGHT + ", " + COLUMN_MAX_WEIGHT + ") "
+                + "VALUES (NEW." + COLUMN_USER_ID + ", '" + resolution + "', " + bucketStart + ", " + bucketEnd + ", 0, 0, NEW." + COLUMN_WEIGHT + ", NEW." + COLUMN_WEIGHT + "); "
+                + "UPDATE " + TABLE_ENTRY_ROLLUPS + " SET "
+                + COLUMN_ENTRY_COUNT + " = " + COLUMN_ENTRY_COUNT + " + 1, "
+                + COLUMN_WEIGHT_SUM + " = " + COLUMN_WEIGHT_SUM + " + NEW." + COLUMN_WEIGHT + ", "
+                + COLUMN_MIN_WEIGHT + " = MIN(" + COLUMN_MIN_WEIGHT + ", NEW." + COLUMN_WEIGHT + "), "
+                + COLUMN_MAX_WEIGHT + " = MAX(" + COLUMN_MAX_WEIGHT + ", NEW." + COLUMN_WEIGHT + ") "
+                + "WHERE " + COLUMN_USER_ID + " = NEW." + COLUMN_USER_ID + " AND " + COLUMN_RESOLUTION + " = '" + resolution + "' AND " + COLUMN_BUCKET_START + " = " + bucketStart + "; ";
+    }
+
+    /**
+     * FROM/WHERE clause selecting the remaining entries of the rollup row being updated by the delete trigger.
+     */
+    private static String bucketEntriesSql() {
+        return " FROM " + TABLE_ENTRIES + " WHERE " + COLUMN_USER_ID + " = OLD." + COLUMN_USER_ID
+                + " AND " + COLUMN_DATE + " BETWEEN " + COLUMN_BUCKET_START + " AND " + COLUMN_BUCKET_END;
+    }
+
+    /**
+     * Statement that builds every rollup bucket of one resolution from the existing entries.
+     */
+    private static String rollupBackfillSql(String resolution, String bucketStart, String bucketEnd) {
+        return "INSERT INTO " + TABLE_ENTRY_ROLLUPS + " (" + COLUMN_USER_ID + ", " + COLUMN_RESOLUTION + ", " + COLUMN_BUCKET_START + ", " + COLUMN_BUCKET_END + ", "
+                + COLUMN_ENTRY_COUNT + ", " + COLUMN_WEIGHT_SUM + ", " + COLUMN_MIN_WEIGHT + ", " + COLUMN_MAX_WEIGHT + ") "
+                + "SELECT " + COLUMN_USER_ID + ", '" + resolution + "', bucket, bucket_last, COUNT(*), TOTAL(" + COLUMN_WEIGHT + "), MIN(" + COLUMN_WEIGHT + "), MAX(" + COLUMN_WEIGHT + ") "
+                + "FROM (SELECT " + COLUMN_USER_ID + ", " + bucketStart + " AS bucket, " + bucketEnd + " AS bucket_last, " + COLUMN_WEIGHT + " FROM " + TABLE_ENTRIES + ") "
+                + "GROUP BY " + COLUMN_USER_ID + ", bucket;";
     }
 }
@@ -2,7 +2,7 @@
  * Christopher Carnell
  *
  * This class manages all database operations for the application.
- * It provides methods to open and close the database connection.
+ * It provides methods to open and close the database connection, which is shared through DatabaseProvider.
  * It includes methods to register users, log in users, and perform CRUD operations on weight entries and user data.
  * It interacts with the SQLite database through the DatabaseHelper class.
  */
@@ -13,104 +13,162 @@ package com.cs360.weightwatcher;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Manages database operations for the WeightWatcher application.
  * Handles user registration, login, and CRUD operations for weight entries.
  */
 public class DatabaseManager {
-    private final DatabaseHelper dbHelper;
+    // SQLite's default limit on bound parameters is 999, so large IN lists are split into chunks
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
+    // Batches with more rows than this per user rebuild that user's stats (and publish one bulk change event)
+    // instead of updating them row by row
+    private static final int PER_ENTRY_UPDATE_LIMIT = 32;
+
+    private final Context context;
     private SQLiteDatabase db;
 
-    // Cache for goal weights to reduce database calls
-    private final Map<Long, Double> goalWeightCache;
+    // Process-wide cache for goal weights to reduce database calls
+    private final GoalWeightCache goalWeightCache;
+
+    // Keeps the user_stats summary table current on every entry write
+    private final WeightStatsEngine statsEngine;
+
+    // Detects goal milestones from the updated stats in the same transaction
+    private final GoalProgressEngine goalEngine;
+
+    // Committed writes are published here so screens can apply them incrementally
+    private final DataChangeBus changeBus;
 
     public DatabaseManager(Context context) {
-        dbHelper = new DatabaseHelper(context);
-        goalWeightCache = new HashMap<>();
+        this.context = context.getApplicationContext();
+        goalWeightCache = GoalWeightCache.getInstance();
+        statsEngine = new WeightStatsEngine();
+        goalEngine = new GoalProgressEngine(statsEngine);
+        changeBus = DataChangeBus.getInstance();
     }
 
     /**
      * Opens the database for writing.
+     * The connection is the shared one from DatabaseProvider, so only the first call in the process pays the open cost.
      */
     public void open() {
-        db = dbHelper.getWritableDatabase();
+        db = DatabaseProvider.getDatabase(context);
     }
 
     /**
      * Closes the database.
+     * The shared connection stays open for the life of the process, so this does not close it;
+     * it is kept so callers can still pair open() and close().
      */
     public void close() {
-        dbHelper.close();
+        // Nothing to release; DatabaseProvider owns the connection
     }
 
     /**
      * Registers a new user in the database.
      *
-     * @param username       The user's username.
-     * @param hashedPassword The user's hashed password.
+     * @param username     The user's username.
+     * @param passwordHash The user's salted password hash, from PasswordHasher.
      * @return The new user's ID or -1 if an error occurred.
      */
-    public long registerUser(String username, String hashedPassword) {
+    public long registerUser(String username, PasswordHash passwordHash) {
         ContentValues values = new ContentValues();
         values.put(DatabaseHelper.COLUMN_USERNAME, username);
-        values.put(DatabaseHelper.COLUMN_PASSWORD, hashedPassword);
+        putPasswordHash(values, passwordHash);
         values.put(DatabaseHelper.COLUMN_PHONE_NUMBER, "");
         values.putNull(DatabaseHelper.COLUMN_GOAL_WEIGHT);
 
         long userId = -1;
         try {
             userId = db.insert(DatabaseHelper.TABLE_USERS, null, values);
+            if (userId != -1) {
+                // Every write to the users table invalidates the cached goal weight
+                goalWeightCache.invalidate(userId);
+            }
         } catch (Exception e) {
             Log.e("DatabaseManager", "Unexpected error occurred in register user.", e);
         }
         return userId;
     }
 
-
     /**
-     * Logs in a user by verifying the username and hashed password.
+     * Retrieves a user by username, including the stored password hash and its parameters, so a login is
+     * one lookup on the unique username index followed by a verify off the database threads.
      *
-     * @param username       The user's username.
-     * @param hashedPassword The user's hashed password.
-     * @return A User object if login is successful, null otherwise.
+     * @param username The user's username.
+     * @return The User, or null if there is no such user or an error occurs.
      */
-    public User loginUser(String username, String hashedPassword) {
+    public User getUserByUsername(String username) {
         User user = null;
         String[] columns = {
                 DatabaseHelper.COLUMN_ID,
                 DatabaseHelper.COLUMN_USERNAME,
                 DatabaseHelper.COLUMN_PASSWORD,
                 DatabaseHelper.COLUMN_PHONE_NUMBER,
-                DatabaseHelper.COLUMN_GOAL_WEIGHT
+                DatabaseHelper.COLUMN_GOAL_WEIGHT,
+                DatabaseHelper.COLUMN_SALT,
+                DatabaseHelper.COLUMN_HASH_VERSION,
+                DatabaseHelper.COLUMN_HASH_ITERATIONS,
+                DatabaseHelper.COLUMN_HASH_KEY_LENGTH
         };
-        String selection = DatabaseHelper.COLUMN_USERNAME + " = ? AND " + DatabaseHelper.COLUMN_PASSWORD + " = ?";
-        String[] selectionArgs = {username, hashedPassword};
+        String selection = DatabaseHelper.COLUMN_USERNAME + " = ?";
+        String[] selectionArgs = {username};
 
         try (Cursor cursor = db.query(DatabaseHelper.TABLE_USERS, columns, selection, selectionArgs, null, null, null)) {
-
-            if (cursor != null && cursor.moveToFirst()) {
-                user = new User(
-                        cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USERNAME)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PASSWORD)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PHONE_NUMBER)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_WEIGHT))
-                );
-            }
+            user = RowMapper.mapFirst(cursor, new UserRowMapper());
         } catch (Exception e) {
-            Log.e("DatabaseManager", "Unexpected error occurred in user login.", e);
+            Log.e("DatabaseManager", "Unexpected error occurred in get user by username.", e);
         }
         return user;
     }
 
+    /**
+     * Replaces the user's password hash, e.g. to upgrade a legacy or lower-cost hash after a successful login.
+     *
+     * @param userId       The user's ID.
+     * @param passwordHash The new password hash.
+     * @return The number of rows affected.
+     */
+    public int updatePasswordHash(long userId, PasswordHash passwordHash) {
+        ContentValues values = new ContentValues();
+        putPasswordHash(values, passwordHash);
+
+        String selection = DatabaseHelper.COLUMN_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(userId)};
+
+        int rowsAffected = 0;
+        try {
+            rowsAffected = db.update(DatabaseHelper.TABLE_USERS, values, selection, selectionArgs);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in update password hash.", e);
+        }
+        return rowsAffected;
+    }
+
+    /**
+     * Puts a password hash and its parameters into the users table's credential columns.
+     */
+    private static void putPasswordHash(ContentValues values, PasswordHash passwordHash) {
+        values.put(DatabaseHelper.COLUMN_PASSWORD, passwordHash.getStoredHash());
+        values.put(DatabaseHelper.COLUMN_SALT, passwordHash.getSalt());
+        values.put(DatabaseHelper.COLUMN_HASH_VERSION, passwordHash.getVersion());
+        values.put(DatabaseHelper.COLUMN_HASH_ITERATIONS, passwordHash.getIterations());
+        values.put(DatabaseHelper.COLUMN_HASH_KEY_LENGTH, passwordHash.getKeyLength());
+    }
+
     /**
      * Updates the user's goal weight in the database.
      *
@@ -127,9 +185,24 @@ public class DatabaseManager {
 
         int rowsAffected = 0;
         try {
-            rowsAffected = db.update(DatabaseHelper.TABLE_USERS, values, selection, selectionArgs);
-            // Update the cache
-            goalWeightCache.put(userId, goalWeight);
+            List<DataChangeEvent> milestones = new ArrayList<>();
+            // The goal and its progress tracking commit together
+            db.beginTransaction();
+            try {
+                rowsAffected = db.update(DatabaseHelper.TABLE_USERS, values, selection, selectionArgs);
+                if (rowsAffected > 0) {
+                    milestones = goalEngine.onGoalChanged(db, statsEngine.load(db, userId), goalWeight);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                // Invalidate the cache; the next read fetches the committed value
+                goalWeightCache.invalidate(userId);
+            }
+            if (rowsAffected > 0) {
+                changeBus.publish(DataChangeEvent.goalChanged(userId, goalWeight));
+                publishAll(milestones);
+            }
         } catch (Exception e) {
             Log.e("DatabaseManager", "Unexpected error occurred in update goal weight.", e);
         }
@@ -144,11 +217,13 @@ public class DatabaseManager {
      */
     public double getGoalWeight(long userId) {
         // Check cache first
-        if (goalWeightCache.containsKey(userId)) {
-            return goalWeightCache.get(userId);
+        Double cachedGoalWeight = goalWeightCache.get(userId);
+        if (cachedGoalWeight != null) {
+            return cachedGoalWeight;
         }
 
         double goalWeight = -1;
+        long cacheGeneration = goalWeightCache.currentGeneration();
         String[] columns = {DatabaseHelper.COLUMN_GOAL_WEIGHT};
         String selection = DatabaseHelper.COLUMN_ID + " = ?";
         String[] selectionArgs = {String.valueOf(userId)};
@@ -157,8 +232,8 @@ public class DatabaseManager {
 
             if (cursor != null && cursor.moveToFirst()) {
                 goalWeight = cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_WEIGHT));
-                // Update cache
-                goalWeightCache.put(userId, goalWeight);
+                // Update cache, unless the user's row was written while we were reading
+                goalWeightCache.put(userId, goalWeight, cacheGeneration);
             }
         } catch (Exception e) {
             Log.e("DatabaseManager", "Unexpected error occurred in get goal weight.", e);
@@ -171,27 +246,120 @@ public class DatabaseManager {
      * Adds a new weight entry for the user.
      *
      * @param userId The user's ID.
-     * @param date   The date of the entry.
+     * @param date   The date of the entry in "yyyy-MM-dd" format, stored as an epoch day.
      * @param weight The weight value.
      * @return The new entry's ID or -1 if an error occurred.
      */
     public long addWeightEntry(long userId, String date, double weight) {
-        ContentValues values = new ContentValues();
-        values.put(DatabaseHelper.COLUMN_USER_ID, userId);
-        values.put(DatabaseHelper.COLUMN_DATE, date);
-        values.put(DatabaseHelper.COLUMN_WEIGHT, weight);
-
         long entryId = -1;
+        boolean committed = false;
         try {
-            entryId = db.insert(DatabaseHelper.TABLE_ENTRIES, null, values);
+            List<DataChangeEvent> milestones = new ArrayList<>();
+            long epochDay = WeightEntry.toEpochDay(date);
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COLUMN_USER_ID, userId);
+            values.put(DatabaseHelper.COLUMN_DATE, epochDay);
+            values.put(DatabaseHelper.COLUMN_WEIGHT, weight);
+
+            // The entry and its stats update commit together
+            db.beginTransaction();
+            try {
+                GoalProgress progress = goalEngine.beforeWrite(db, userId);
+                entryId = db.insert(DatabaseHelper.TABLE_ENTRIES, null, values);
+                if (entryId != -1) {
+                    WeightStats stats = statsEngine.onEntryAdded(db, userId, epochDay, weight);
+                    milestones = goalEngine.onStatsChanged(db, progress, stats);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            committed = true;
+            if (entryId != -1) {
+                changeBus.publish(DataChangeEvent.entryInserted(userId, entryId, epochDay, weight));
+                publishAll(milestones);
+            }
         } catch (Exception e) {
             Log.e("DatabaseManager", "Unexpected error occurred in add weight entry.", e);
+            if (!committed) {
+                entryId = -1;
+            }
         }
         return entryId;
     }
 
+    /**
+     * Adds many weight entries in a single transaction.
+     * One compiled INSERT statement is reused for every row, so the whole batch costs one commit
+     * instead of one per row. Rows that violate a constraint are skipped and counted as rejected.
+     *
+     * @param entries The entries to insert; their IDs are ignored.
+     * @return The number of rows inserted and rejected.
+     */
+    public BulkInsertResult addWeightEntries(List<WeightEntry> entries) {
+        int inserted = 0;
+        int rejected = 0;
+        Set<Long> affectedUsers = new HashSet<>();
+        // Each user's goal progress as it was before the batch's first row for that user
+        Map<Long, GoalProgress> progressByUser = new HashMap<>();
+        List<DataChangeEvent> milestones = new ArrayList<>();
+        boolean committed = false;
+        String sql = "INSERT INTO " + DatabaseHelper.TABLE_ENTRIES + " ("
+                + DatabaseHelper.COLUMN_USER_ID + ", "
+                + DatabaseHelper.COLUMN_DATE + ", "
+                + DatabaseHelper.COLUMN_WEIGHT + ") VALUES (?, ?, ?)";
+
+        try (SQLiteStatement insert = db.compileStatement(sql)) {
+            db.beginTransaction();
+            try {
+                for (WeightEntry entry : entries) {
+                    if (!progressByUser.containsKey(entry.getUserId())) {
+                        progressByUser.put(entry.getUserId(), goalEngine.beforeWrite(db, entry.getUserId()));
+                    }
+                    insert.bindLong(1, entry.getUserId());
+                    insert.bindLong(2, entry.getEpochDay());
+                    insert.bindDouble(3, entry.getWeight());
+                    try {
+                        if (insert.executeInsert() != -1) {
+                            inserted++;
+                            affectedUsers.add(entry.getUserId());
+                        } else {
+                            rejected++;
+                        }
+                    } catch (SQLiteConstraintException e) {
+                        // e.g. a non-positive weight or an unknown user; the rest of the batch still commits
+                        rejected++;
+                    }
+                }
+
+                // One rebuild per user is cheaper than an incremental update per imported row
+                for (long userId : affectedUsers) {
+                    WeightStats stats = statsEngine.rebuild(db, userId);
+                    milestones.addAll(goalEngine.onStatsChanged(db, progressByUser.get(userId), stats));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            committed = true;
+            for (long userId : affectedUsers) {
+                publishEntriesChanged(userId);
+            }
+            publishAll(milestones);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in add weight entries.", e);
+            if (!committed) {
+                // The transaction was rolled back, so nothing from this batch was stored
+                return new BulkInsertResult(0, entries.size());
+            }
+            // Otherwise only a listener failed; the rows are stored and are reported as inserted
+        }
+        return new BulkInsertResult(inserted, rejected);
+    }
+
     /**
      * Retrieves all weight entries for the user.
+     * This reads the whole history; screens should use the page and range queries below instead.
      *
      * @param userId The user's ID.
      * @return A list of WeightEntry objects.
@@ -206,21 +374,11 @@ public class DatabaseManager {
         };
         String selection = DatabaseHelper.COLUMN_USER_ID + " = ?";
         String[] selectionArgs = {String.valueOf(userId)};
-        String orderBy = DatabaseHelper.COLUMN_DATE + " DESC";
+        String orderBy = DatabaseHelper.COLUMN_DATE + " DESC, " + DatabaseHelper.COLUMN_ID + " DESC";
 
         try (Cursor cursor = db.query(DatabaseHelper.TABLE_ENTRIES, columns, selection, selectionArgs, null, null, orderBy)) {
 
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    WeightEntry entry = new WeightEntry(
-                            cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)),
-                            cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USER_ID)),
-                            cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DATE)),
-                            cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_WEIGHT))
-                    );
-                    entries.add(entry);
-                } while (cursor.moveToNext());
-            }
+            entries = RowMapper.mapAll(cursor, new WeightEntryRowMapper());
         } catch (Exception e) {
             Log.e("DatabaseManager", "Unexpected error occurred get weight entries.", e);
             entries = new ArrayList<>();
@@ -228,6 +386,200 @@ public class DatabaseManager {
         return entries;
     }
 
+    /**
+     * Retrieves one page of weight entries for the user, newest first.
+     * Pages are keyed on (date, _id) so each call seeks directly past the anchor
+     * instead of re-reading earlier rows with an OFFSET.
+     *
+     * @param userId   The user's ID.
+     * @param anchor   The last entry of the previous page, or null for the first page.
+     * @param pageSize The maximum number of entries to return.
+     * @return A series of at most pageSize entries, read straight from the Cursor into primitive arrays.
+     */
+    public WeightEntrySeries getWeightEntriesPage(long userId, WeightEntry anchor, int pageSize) {
+        WeightEntrySeries entries = new WeightEntrySeries(userId, pageSize);
+        String[] columns = {
+                DatabaseHelper.COLUMN_ID,
+                DatabaseHelper.COLUMN_DATE,
+                DatabaseHelper.COLUMN_WEIGHT
+        };
+        String selection;
+        String[] selectionArgs;
+        if (anchor == null) {
+            selection = DatabaseHelper.COLUMN_USER_ID + " = ?";
+            selectionArgs = new String[]{String.valueOf(userId)};
+        } else {
+            // Rows strictly after the anchor in (date DESC, _id DESC) order; the separate
+            // "date <= ?" bound lets SQLite seek the (user_id, date) index straight to the anchor
+            selection = DatabaseHelper.COLUMN_USER_ID + " = ? AND "
+                    + DatabaseHelper.COLUMN_DATE + " <= ? AND ("
+                    + DatabaseHelper.COLUMN_DATE + " < ? OR " + DatabaseHelper.COLUMN_ID + " < ?)";
+            selectionArgs = new String[]{
+                    String.valueOf(userId),
+                    String.valueOf(anchor.getEpochDay()),
+                    String.valueOf(anchor.getEpochDay()),
+                    String.valueOf(anchor.getId())
+            };
+        }
+        String orderBy = DatabaseHelper.COLUMN_DATE + " DESC, " + DatabaseHelper.COLUMN_ID + " DESC";
+        String limit = String.valueOf(pageSize);
+
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_ENTRIES, columns, selection, selectionArgs, null, null, orderBy, limit)) {
+
+            new WeightEntryRowMapper(userId).readInto(cursor, entries);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get weight entries page.", e);
+            entries = new WeightEntrySeries(userId);
+        }
+        return entries;
+    }
+
+    /**
+     * Retrieves the user's entries between two dates from a date-bounded index scan.
+     *
+     * @param userId       The user's ID.
+     * @param fromEpochDay The first day of the range (inclusive).
+     * @param toEpochDay   The last day of the range (inclusive).
+     * @return The entries in the range, newest first, or an empty series if an error occurs.
+     */
+    public WeightEntrySeries getWeightEntriesBetween(long userId, long fromEpochDay, long toEpochDay) {
+        try {
+            return WeightEntryQueries.between(db, userId, fromEpochDay, toEpochDay);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get weight entries between.", e);
+            return new WeightEntrySeries(userId);
+        }
+    }
+
+    /**
+     * Retrieves the user's newest entries.
+     *
+     * @param userId The user's ID.
+     * @param count  The maximum number of entries to return.
+     * @return At most count entries, newest first, or an empty series if an error occurs.
+     */
+    public WeightEntrySeries getLatestWeightEntries(long userId, int count) {
+        try {
+            return WeightEntryQueries.latest(db, userId, count);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get latest weight entries.", e);
+            return new WeightEntrySeries(userId);
+        }
+    }
+
+    /**
+     * Retrieves the user's newest entry dated on or before a day with a single index seek.
+     *
+     * @param userId   The user's ID.
+     * @param epochDay The last day to consider (inclusive).
+     * @return The entry, or null if there is none or an error occurs.
+     */
+    public WeightEntry getLatestWeightEntryOnOrBefore(long userId, long epochDay) {
+        try {
+            return WeightEntryQueries.latestOnOrBefore(db, userId, epochDay);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get latest weight entry on or before.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the user's newest entry with a single index seek.
+     *
+     * @param userId The user's ID.
+     * @return The entry, or null if the user has no entries or an error occurs.
+     */
+    public WeightEntry getLatestWeightEntry(long userId) {
+        try {
+            return WeightEntryQueries.latest(db, userId);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get latest weight entry.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves a downsampled weight series for a date range.
+     * Daily buckets are grouped from a bounded scan of the (user_id, date) index; weekly and monthly
+     * buckets come from the trigger-maintained rollup table, so the cost depends on the number of
+     * buckets rather than the number of entries.
+     *
+     * @param userId       The user's ID.
+     * @param fromEpochDay The first day of the range (inclusive).
+     * @param toEpochDay   The last day of the range (inclusive).
+     * @param resolution   The bucket width.
+     * @return The buckets overlapping the range, oldest first, or an empty list if an error occurs.
+     */
+    public List<WeightBucket> getWeightSeries(long userId, long fromEpochDay, long toEpochDay, WeightBucket.Resolution resolution) {
+        List<WeightBucket> buckets = new ArrayList<>();
+        String sql;
+        String[] selectionArgs;
+
+        if (resolution == WeightBucket.Resolution.DAY) {
+            sql = "SELECT " + DatabaseHelper.COLUMN_DATE + ", " + DatabaseHelper.COLUMN_DATE + ", COUNT(*), TOTAL(" + DatabaseHelper.COLUMN_WEIGHT + "), "
+                    + "MIN(" + DatabaseHelper.COLUMN_WEIGHT + "), MAX(" + DatabaseHelper.COLUMN_WEIGHT + ")"
+                    + " FROM " + DatabaseHelper.TABLE_ENTRIES
+                    + " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ?"
+                    + " GROUP BY " + DatabaseHelper.COLUMN_DATE
+                    + " ORDER BY " + DatabaseHelper.COLUMN_DATE + " ASC";
+            selectionArgs = new String[]{String.valueOf(userId), String.valueOf(fromEpochDay), String.valueOf(toEpochDay)};
+        } else {
+            String rollupResolution = resolution == WeightBucket.Resolution.WEEK
+                    ? DatabaseHelper.RESOLUTION_WEEK : DatabaseHelper.RESOLUTION_MONTH;
+            sql = "SELECT " + DatabaseHelper.COLUMN_BUCKET_START + ", " + DatabaseHelper.COLUMN_BUCKET_END + ", "
+                    + DatabaseHelper.COLUMN_ENTRY_COUNT + ", " + DatabaseHelper.COLUMN_WEIGHT_SUM + ", "
+                    + DatabaseHelper.COLUMN_MIN_WEIGHT + ", " + DatabaseHelper.COLUMN_MAX_WEIGHT
+                    + " FROM " + DatabaseHelper.TABLE_ENTRY_ROLLUPS
+                    + " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_RESOLUTION + " = ?"
+                    + " AND " + DatabaseHelper.COLUMN_BUCKET_START + " <= ? AND " + DatabaseHelper.COLUMN_BUCKET_END + " >= ?"
+                    + " ORDER BY " + DatabaseHelper.COLUMN_BUCKET_START + " ASC";
+            selectionArgs = new String[]{String.valueOf(userId), rollupResolution, String.valueOf(toEpochDay), String.valueOf(fromEpochDay)};
+        }
+
+        try (Cursor cursor = db.rawQuery(sql, selectionArgs)) {
+            while (cursor != null && cursor.moveToNext()) {
+                int entryCount = cursor.getInt(2);
+                buckets.add(new WeightBucket(
+                        cursor.getLong(0),
+                        cursor.getLong(1),
+                        entryCount,
+                        cursor.getDouble(3) / entryCount,
+                        cursor.getDouble(4),
+                        cursor.getDouble(5)
+                ));
+            }
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get weight series.", e);
+            buckets = new ArrayList<>();
+        }
+        return buckets;
+    }
+
+    /**
+     * Opens a cursor over all of the user's weight entries, oldest first, for streaming readers
+     * such as the CSV exporter. Rows are read lazily, so no list of entries is built.
+     * The caller is responsible for closing the cursor.
+     *
+     * @param userId The user's ID.
+     * @return A cursor with the date (epoch day) and weight columns, or null if an error occurred.
+     */
+    public Cursor queryWeightEntries(long userId) {
+        String[] columns = {
+                DatabaseHelper.COLUMN_DATE,
+                DatabaseHelper.COLUMN_WEIGHT
+        };
+        String selection = DatabaseHelper.COLUMN_USER_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(userId)};
+        String orderBy = DatabaseHelper.COLUMN_DATE + " ASC, " + DatabaseHelper.COLUMN_ID + " ASC";
+
+        try {
+            return db.query(DatabaseHelper.TABLE_ENTRIES, columns, selection, selectionArgs, null, null, orderBy);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in query weight entries.", e);
+            return null;
+        }
+    }
+
     /**
      * Deletes a weight entry from the database.
      *
@@ -239,14 +591,203 @@ public class DatabaseManager {
         String[] selectionArgs = {String.valueOf(entryId)};
 
         int rowsDeleted = 0;
+        boolean committed = false;
         try {
-            rowsDeleted = db.delete(DatabaseHelper.TABLE_ENTRIES, selection, selectionArgs);
+            WeightEntry entry;
+            List<DataChangeEvent> milestones = new ArrayList<>();
+            db.beginTransaction();
+            try {
+                // Read the row first so the stats can be updated from its values
+                entry = getWeightEntry(entryId);
+                if (entry != null) {
+                    GoalProgress progress = goalEngine.beforeWrite(db, entry.getUserId());
+                    rowsDeleted = db.delete(DatabaseHelper.TABLE_ENTRIES, selection, selectionArgs);
+                    if (rowsDeleted > 0) {
+                        WeightStats stats = statsEngine.onEntryDeleted(db, entry.getUserId(), entry.getEpochDay(), entry.getWeight());
+                        milestones = goalEngine.onStatsChanged(db, progress, stats);
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            committed = true;
+            if (rowsDeleted > 0) {
+                changeBus.publish(DataChangeEvent.entryDeleted(entry.getUserId(), entryId, entry.getEpochDay(), entry.getWeight()));
+                publishAll(milestones);
+            }
         } catch (Exception e) {
             Log.e("DatabaseManager", "Unexpected error occurred in delete weight entry.", e);
+            if (!committed) {
+                rowsDeleted = 0;
+            }
         }
         return rowsDeleted;
     }
 
+    /**
+     * Deletes many weight entries in a single transaction using "DELETE ... WHERE _id IN (...)",
+     * so removing hundreds of rows costs one commit. IDs that do not exist are ignored.
+     * Stats are updated per row for small batches and rebuilt once per user for large ones, and
+     * change events are published the same way (one per row, or one ENTRIES_CHANGED per user).
+     *
+     * @param entryIds The IDs of the entries to delete.
+     * @return The number of rows deleted (0 if none of the IDs exist), or -1 if an error occurred and nothing was deleted.
+     */
+    public int deleteWeightEntries(long[] entryIds) {
+        if (entryIds.length == 0) {
+            return 0;
+        }
+        String[] columns = {
+                DatabaseHelper.COLUMN_ID,
+                DatabaseHelper.COLUMN_USER_ID,
+                DatabaseHelper.COLUMN_DATE,
+                DatabaseHelper.COLUMN_WEIGHT
+        };
+
+        Map<Long, List<WeightEntry>> deletedByUser = new HashMap<>();
+        // Each user's goal progress as it was before the first chunk that deletes their rows
+        Map<Long, GoalProgress> progressByUser = new HashMap<>();
+        List<DataChangeEvent> milestones = new ArrayList<>();
+        int rowsDeleted = 0;
+        boolean committed = false;
+        try {
+            db.beginTransaction();
+            try {
+                for (int start = 0; start < entryIds.length; start += MAX_IDS_PER_STATEMENT) {
+                    int end = Math.min(start + MAX_IDS_PER_STATEMENT, entryIds.length);
+                    String selection = DatabaseHelper.COLUMN_ID + " IN (" + placeholders(end - start) + ")";
+                    String[] selectionArgs = new String[end - start];
+                    for (int i = start; i < end; i++) {
+                        selectionArgs[i - start] = String.valueOf(entryIds[i]);
+                    }
+
+                    // Read the rows first so the stats and change events can be built from their values
+                    try (Cursor cursor = db.query(DatabaseHelper.TABLE_ENTRIES, columns, selection, selectionArgs, null, null, null)) {
+                        for (WeightEntry entry : RowMapper.mapAll(cursor, new WeightEntryRowMapper())) {
+                            deletedByUser.computeIfAbsent(entry.getUserId(), userId -> new ArrayList<>()).add(entry);
+                            if (!progressByUser.containsKey(entry.getUserId())) {
+                                progressByUser.put(entry.getUserId(), goalEngine.beforeWrite(db, entry.getUserId()));
+                            }
+                        }
+                    }
+                    rowsDeleted += db.delete(DatabaseHelper.TABLE_ENTRIES, selection, selectionArgs);
+                }
+
+                for (Map.Entry<Long, List<WeightEntry>> userEntries : deletedByUser.entrySet()) {
+                    long userId = userEntries.getKey();
+                    WeightStats stats = null;
+                    if (userEntries.getValue().size() <= PER_ENTRY_UPDATE_LIMIT) {
+                        for (WeightEntry entry : userEntries.getValue()) {
+                            stats = statsEngine.onEntryDeleted(db, userId, entry.getEpochDay(), entry.getWeight());
+                        }
+                    } else {
+                        stats = statsEngine.rebuild(db, userId);
+                    }
+                    // The goal is judged once against the batch's end state
+                    milestones.addAll(goalEngine.onStatsChanged(db, progressByUser.get(userId), stats));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            committed = true;
+
+            for (Map.Entry<Long, List<WeightEntry>> userEntries : deletedByUser.entrySet()) {
+                long userId = userEntries.getKey();
+                if (userEntries.getValue().size() <= PER_ENTRY_UPDATE_LIMIT) {
+                    for (WeightEntry entry : userEntries.getValue()) {
+                        changeBus.publish(DataChangeEvent.entryDeleted(userId, entry.getId(), entry.getEpochDay(), entry.getWeight()));
+                    }
+                } else {
+                    publishEntriesChanged(userId);
+                }
+            }
+            publishAll(milestones);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in delete weight entries.", e);
+            if (!committed) {
+                rowsDeleted = -1;
+            }
+        }
+        return rowsDeleted;
+    }
+
+    /**
+     * Publishes ENTRIES_CHANGED for a committed bulk change and retires the user's history snapshot, which the
+     * change carries no per-entry details to patch. Runs whether or not the history screen is open; the screen
+     * writes a fresh snapshot after its next reload. Called on the writer thread, where the screen's snapshot
+     * writes also run, so none of them can land between the delete and the generation bump.
+     */
+    private void publishEntriesChanged(long userId) {
+        WeightSeriesSnapshot.delete(WeightSeriesSnapshot.fileFor(context, userId));
+        changeBus.publish(DataChangeEvent.entriesChanged(userId));
+        // Only after the commit listeners have dropped their cached pages, so a list loaded at the new
+        // generation already includes this change
+        WeightSeriesSnapshot.advanceGeneration(userId);
+    }
+
+    /**
+     * Publishes events collected inside a transaction, once it has committed.
+     */
+    private void publishAll(List<DataChangeEvent> events) {
+        for (DataChangeEvent event : events) {
+            changeBus.publish(event);
+        }
+    }
+
+    /**
+     * @return "?, ?, ..., ?" with count placeholders.
+     */
+    private static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "?" : ", ?");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Retrieves a single weight entry by its ID.
+     *
+     * @param entryId The entry's ID.
+     * @return The WeightEntry, or null if it does not exist or an error occurs.
+     */
+    public WeightEntry getWeightEntry(long entryId) {
+        WeightEntry entry = null;
+        String[] columns = {
+                DatabaseHelper.COLUMN_ID,
+                DatabaseHelper.COLUMN_USER_ID,
+                DatabaseHelper.COLUMN_DATE,
+                DatabaseHelper.COLUMN_WEIGHT
+        };
+        String selection = DatabaseHelper.COLUMN_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(entryId)};
+
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_ENTRIES, columns, selection, selectionArgs, null, null, null)) {
+
+            entry = RowMapper.mapFirst(cursor, new WeightEntryRowMapper());
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get weight entry.", e);
+        }
+        return entry;
+    }
+
+    /**
+     * Retrieves the user's summary statistics from the user_stats table.
+     *
+     * @param userId The user's ID.
+     * @return The user's WeightStats, or null if an error occurs.
+     */
+    public WeightStats getWeightStats(long userId) {
+        try {
+            return statsEngine.load(db, userId);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get weight stats.", e);
+            return null;
+        }
+    }
+
     /**
      * Updates the user's phone number in the database.
      *
@@ -264,6 +805,7 @@ public class DatabaseManager {
         int rowsAffected = 0;
         try {
             rowsAffected = db.update(DatabaseHelper.TABLE_USERS, values, whereClause, whereArgs);
+            goalWeightCache.invalidate(userId);
         } catch (Exception e) {
             Log.e("DatabaseManager", "Unexpected error occurred update user phone number.", e);
         }
@@ -292,5 +834,186 @@ public class DatabaseManager {
         }
         return phoneNumber;
     }
+
+    /**
+     * Retrieves every user's settings from the user_settings table.
+     *
+     * @return The settings keyed by user ID; empty if none are saved or an error occurs.
+     */
+    public Map<Long, UserSettings> getAllUserSettings() {
+        Map<Long, UserSettings> settingsByUser = new HashMap<>();
+        String[] columns = {
+                DatabaseHelper.COLUMN_USER_ID,
+                DatabaseHelper.COLUMN_SMS_OPT_IN,
+                DatabaseHelper.COLUMN_SMS_SETUP_COMPLETED
+        };
+
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_USER_SETTINGS, columns, null, null, null, null, null)) {
+
+            for (UserSettings settings : RowMapper.mapAll(cursor, new UserSettingsRowMapper())) {
+                settingsByUser.put(settings.getUserId(), settings);
+            }
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get all user settings.", e);
+        }
+        return settingsByUser;
+    }
+
+    /**
+     * Saves several users' settings in a single transaction, replacing their existing rows.
+     *
+     * @param settingsList The settings to save.
+     * @return True if every row was saved, false if an error occurred and nothing was saved.
+     */
+    public boolean saveUserSettings(List<UserSettings> settingsList) {
+        String sql = "INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_USER_SETTINGS + " ("
+                + DatabaseHelper.COLUMN_USER_ID + ", "
+                + DatabaseHelper.COLUMN_SMS_OPT_IN + ", "
+                + DatabaseHelper.COLUMN_SMS_SETUP_COMPLETED + ") VALUES (?, ?, ?)";
+
+        try (SQLiteStatement upsert = db.compileStatement(sql)) {
+            db.beginTransaction();
+            try {
+                for (UserSettings settings : settingsList) {
+                    upsert.bindLong(1, settings.getUserId());
+                    upsert.bindLong(2, settings.isSmsOptIn() ? 1 : 0);
+                    upsert.bindLong(3, settings.isSmsSetupCompleted() ? 1 : 0);
+                    upsert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in save user settings.", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a message to the SMS outbox unless the same user already has one with the same dedupe key.
+     *
+     * @param userId      The ID of the user the message is for.
+     * @param dedupeKey   Identifies the event the message is about; one message is kept per user and key.
+     * @param message     The text to send.
+     * @param nowMillis   The current time, used as the creation and first attempt time.
+     * @return The new outbox row's ID, or -1 if it was a duplicate or an error occurred.
+     */
+    public long enqueueSms(long userId, String dedupeKey, String message, long nowMillis) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_USER_ID, userId);
+        values.put(DatabaseHelper.COLUMN_DEDUPE_KEY, dedupeKey);
+        values.put(DatabaseHelper.COLUMN_MESSAGE, message);
+        values.put(DatabaseHelper.COLUMN_STATUS, DatabaseHelper.SMS_STATUS_PENDING);
+        values.put(DatabaseHelper.COLUMN_ATTEMPTS, 0);
+        values.put(DatabaseHelper.COLUMN_NEXT_ATTEMPT_AT, nowMillis);
+        values.put(DatabaseHelper.COLUMN_CREATED_AT, nowMillis);
+
+        long messageId = -1;
+        try {
+            // The unique (user_id, dedupe_key) constraint turns a repeated event into an ignored insert
+            messageId = db.insertWithOnConflict(DatabaseHelper.TABLE_SMS_OUTBOX, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in enqueue sms.", e);
+        }
+        return messageId;
+    }
+
+    /**
+     * Retrieves pending outbox messages whose next attempt is due, oldest first, with each user's phone number.
+     *
+     * @param nowMillis The current time.
+     * @param limit     The maximum number of messages to return.
+     * @return The due messages; empty if there are none or an error occurs.
+     */
+    public List<OutboxMessage> getDueSmsMessages(long nowMillis, int limit) {
+        List<OutboxMessage> messages = new ArrayList<>();
+        String sql = "SELECT o." + DatabaseHelper.COLUMN_ID + ", o." + DatabaseHelper.COLUMN_USER_ID + ", "
+                + "u." + DatabaseHelper.COLUMN_PHONE_NUMBER + ", o." + DatabaseHelper.COLUMN_MESSAGE + ", o." + DatabaseHelper.COLUMN_ATTEMPTS
+                + " FROM " + DatabaseHelper.TABLE_SMS_OUTBOX + " o JOIN " + DatabaseHelper.TABLE_USERS + " u"
+                + " ON u." + DatabaseHelper.COLUMN_ID + " = o." + DatabaseHelper.COLUMN_USER_ID
+                + " WHERE o." + DatabaseHelper.COLUMN_STATUS + " = " + DatabaseHelper.SMS_STATUS_PENDING
+                + " AND o." + DatabaseHelper.COLUMN_NEXT_ATTEMPT_AT + " <= ?"
+                + " ORDER BY o." + DatabaseHelper.COLUMN_NEXT_ATTEMPT_AT + " LIMIT ?";
+        String[] selectionArgs = {String.valueOf(nowMillis), String.valueOf(limit)};
+
+        try (Cursor cursor = db.rawQuery(sql, selectionArgs)) {
+
+            messages = RowMapper.mapAll(cursor, new OutboxMessageRowMapper());
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get due sms messages.", e);
+        }
+        return messages;
+    }
+
+    /**
+     * Records the outcome of a send attempt on an outbox message.
+     *
+     * @param messageId     The outbox row's ID.
+     * @param status        One of the DatabaseHelper.SMS_STATUS_* values.
+     * @param attempts      The number of failed attempts so far.
+     * @param nextAttemptAt When a pending message should next be tried; for a sent or failed one, when it was last tried.
+     * @return The number of rows affected.
+     */
+    public int updateSmsStatus(long messageId, int status, int attempts, long nextAttemptAt) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_STATUS, status);
+        values.put(DatabaseHelper.COLUMN_ATTEMPTS, attempts);
+        values.put(DatabaseHelper.COLUMN_NEXT_ATTEMPT_AT, nextAttemptAt);
+
+        String whereClause = DatabaseHelper.COLUMN_ID + " = ?";
+        String[] whereArgs = {String.valueOf(messageId)};
+
+        int rowsAffected = 0;
+        try {
+            rowsAffected = db.update(DatabaseHelper.TABLE_SMS_OUTBOX, values, whereClause, whereArgs);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in update sms status.", e);
+        }
+        return rowsAffected;
+    }
+
+    /**
+     * Finds when the earliest pending outbox message is due.
+     *
+     * @return The earliest next attempt time, or -1 if nothing is pending or an error occurs.
+     */
+    public long getNextSmsAttemptTime() {
+        long nextAttemptAt = -1;
+        String sql = "SELECT MIN(" + DatabaseHelper.COLUMN_NEXT_ATTEMPT_AT + ") FROM " + DatabaseHelper.TABLE_SMS_OUTBOX
+                + " WHERE " + DatabaseHelper.COLUMN_STATUS + " = " + DatabaseHelper.SMS_STATUS_PENDING;
+
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                nextAttemptAt = cursor.getLong(0);
+            }
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in get next sms attempt time.", e);
+        }
+        return nextAttemptAt;
+    }
+
+    /**
+     * Deletes sent and failed outbox messages whose last attempt was before a cutoff, so the outbox only
+     * keeps recent history. Pending messages are never deleted.
+     *
+     * @param cutoffMillis Messages last attempted before this time are deleted.
+     * @return The number of rows deleted.
+     */
+    public int deleteFinishedSmsMessages(long cutoffMillis) {
+        String whereClause = DatabaseHelper.COLUMN_STATUS + " IN (" + DatabaseHelper.SMS_STATUS_SENT + ", " + DatabaseHelper.SMS_STATUS_FAILED + ")"
+                + " AND " + DatabaseHelper.COLUMN_NEXT_ATTEMPT_AT + " < ?";
+        String[] whereArgs = {String.valueOf(cutoffMillis)};
+
+        int rowsDeleted = 0;
+        try {
+            rowsDeleted = db.delete(DatabaseHelper.TABLE_SMS_OUTBOX, whereClause, whereArgs);
+        } catch (Exception e) {
+            Log.e("DatabaseManager", "Unexpected error occurred in delete finished sms messages.", e);
+        }
+        return rowsDeleted;
+    }
 }
 
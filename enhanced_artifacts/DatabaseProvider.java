@@ -0,0 +1,56 @@
+/**
+ * Christopher Carnell
+ *
+ * This class provides the single, application-scoped database connection.
+ * One DatabaseHelper is opened for the life of the process in write-ahead logging mode,
+ * so navigating between activities no longer repeats the open and schema check,
+ * and reads from the connection pool can run while a write is committing.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Holds the process-wide DatabaseHelper shared by every DatabaseManager.
+ */
+public final class DatabaseProvider {
+
+    private static volatile DatabaseHelper helper;
+
+    private DatabaseProvider() {
+    }
+
+    /**
+     * Returns the shared helper, creating it on first use.
+     * The application context is used so no activity is leaked.
+     *
+     * @param context Any context.
+     * @return The shared DatabaseHelper.
+     */
+    public static DatabaseHelper getHelper(Context context) {
+        if (helper == null) {
+            synchronized (DatabaseProvider.class) {
+                if (helper == null) {
+                    DatabaseHelper newHelper = new DatabaseHelper(context.getApplicationContext());
+                    // WAL lets the connection pool serve readers concurrently with the writer
+                    newHelper.setWriteAheadLoggingEnabled(true);
+                    helper = newHelper;
+                }
+            }
+        }
+        return helper;
+    }
+
+    /**
+     * Returns the shared database, opening it (and running any schema upgrade) on first use.
+     * SQLiteOpenHelper caches the open database, so later calls are cheap.
+     *
+     * @param context Any context.
+     * @return The shared writable SQLiteDatabase.
+     */
+    public static SQLiteDatabase getDatabase(Context context) {
+        return getHelper(context).getWritableDatabase();
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Christopher Carnell
+ *
+ * This enum lists the milestones GoalProgressEngine announces as MILESTONE_REACHED change events.
+ * Progress milestones are percentages of the distance from the starting weight to the goal weight.
+ * Each milestone has a bit in the goal_progress table's milestones column, so it is announced once per goal.
+ */
+
+package com.cs360.weightwatcher;
+
+public enum GoalMilestone {
+    GOAL_REACHED(100),
+    PROGRESS_5(5),
+    PROGRESS_10(10),
+    PROGRESS_25(25),
+    PLATEAU(0);
+
+    private final int percent;
+
+    GoalMilestone(int percent) {
+        this.percent = percent;
+    }
+
+    /**
+     * @return The bit for this milestone in the milestones column.
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    //getters
+    public int getPercent() { return percent; }
+}
@@ -0,0 +1,45 @@
+/**
+ * Christopher Carnell
+ *
+ * This model class holds a user's progress toward the current goal weight: the goal, the weight the user
+ * started from when the goal was set, whether the latest entry is above or at/below the goal (and since
+ * which date), and which milestones have already been announced.
+ * It is persisted one row per user in the goal_progress table.
+ */
+
+package com.cs360.weightwatcher;
+
+public class GoalProgress {
+    private final long userId;
+    private double goalWeight;
+    private double startWeight;
+    private int goalState = DatabaseHelper.GOAL_STATE_ABOVE;
+    private long reachedDate = -1;
+    private int milestones;
+
+    public GoalProgress(long userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * @param milestone The milestone to check.
+     * @return True if the milestone has already been announced for this goal.
+     */
+    public boolean hasMilestone(GoalMilestone milestone) {
+        return (milestones & milestone.bit()) != 0;
+    }
+
+    //getters and setters
+    public long getUserId() { return userId; }
+    public double getGoalWeight() { return goalWeight; }
+    public double getStartWeight() { return startWeight; }
+    public int getGoalState() { return goalState; }
+    public long getReachedDate() { return reachedDate; }
+    public int getMilestones() { return milestones; }
+
+    public void setGoalWeight(double goalWeight) { this.goalWeight = goalWeight; }
+    public void setStartWeight(double startWeight) { this.startWeight = startWeight; }
+    public void setGoalState(int goalState) { this.goalState = goalState; }
+    public void setReachedDate(long reachedDate) { this.reachedDate = reachedDate; }
+    public void setMilestones(int milestones) { this.milestones = milestones; }
+}
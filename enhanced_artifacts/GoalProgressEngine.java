@@ -0,0 +1,224 @@
+/**
+ * Christopher Carnell
+ *
+ * This class detects goal milestones as entries are written, from each user's stored goal_progress row
+ * and the WeightStats the write has just updated. The goal is judged against the latest entry, so an
+ * insert, a delete or a back-dated entry that changes the latest weight is seen as a crossing, and one
+ * that does not change it is not. Milestones are edge-triggered: reaching the goal is announced when the
+ * latest weight crosses to or below it, and each progress or plateau milestone once per goal.
+ * Every evaluation is one primary-key read and at most one write, whatever the length of the history.
+ * A user with a goal but no progress row yet (e.g. right after the upgrade that added the table) is first
+ * given a baseline from the state before the write, so a crossing made by that write is still announced.
+ * Results are persisted inside the caller's transaction; the caller publishes the returned events after commit.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintains the goal_progress table and reports the milestones each write reaches.
+ */
+public class GoalProgressEngine {
+
+    private static final GoalMilestone[] PROGRESS_MILESTONES = {
+            GoalMilestone.PROGRESS_5, GoalMilestone.PROGRESS_10, GoalMilestone.PROGRESS_25
+    };
+
+    // A plateau is a weekly rate (over the stats' 30-day window) below this many pounds a week,
+    // once the user has enough entries for the rate to mean something
+    private static final double PLATEAU_WEEKLY_RATE = 0.2;
+    private static final int PLATEAU_MIN_ENTRIES = 7;
+    // The plateau only ends once the rate clearly picks up again, so noise around the threshold does not re-announce it
+    private static final double PLATEAU_EXIT_WEEKLY_RATE = 0.5;
+
+    private final WeightStatsEngine statsEngine;
+
+    /**
+     * @param statsEngine Used to read a user's stats before a write when a baseline has to be recorded.
+     */
+    public GoalProgressEngine(WeightStatsEngine statsEngine) {
+        this.statsEngine = statsEngine;
+    }
+
+    /**
+     * Loads a user's progress before an entry write changes the entries or the stats. Must run inside the
+     * write's transaction. If the user has a goal but no progress row yet, one is recorded from the current
+     * state, so the write is judged against where the user stood before it.
+     *
+     * @param db     The database.
+     * @param userId The user's ID.
+     * @return The user's progress, to pass to onStatsChanged, or null if the user has no goal.
+     */
+    public GoalProgress beforeWrite(SQLiteDatabase db, long userId) {
+        GoalProgress progress = load(db, userId);
+        if (progress != null) {
+            return progress;
+        }
+
+        double goalWeight = loadGoalWeight(db, userId);
+        if (goalWeight <= 0) {
+            return null;
+        }
+        WeightStats stats = statsEngine.load(db, userId);
+        progress = startTracking(stats, goalWeight);
+        if (stats.getEntryCount() > 0 && stats.getLatestWeight() <= goalWeight) {
+            // Already at the goal before this write; that is not a crossing
+            progress.setGoalState(DatabaseHelper.GOAL_STATE_BELOW);
+            progress.setReachedDate(stats.getLatestDate());
+        }
+        save(db, progress);
+        return progress;
+    }
+
+    /**
+     * Evaluates a user's goal after an entry write. Must run inside the write's transaction.
+     *
+     * @param db       The database.
+     * @param progress The user's progress from beforeWrite, or null if the user has no goal.
+     * @param stats    The user's stats, as updated by the write.
+     * @return The milestones reached by this write, as events to publish after commit.
+     */
+    public List<DataChangeEvent> onStatsChanged(SQLiteDatabase db, GoalProgress progress, WeightStats stats) {
+        List<DataChangeEvent> events = new ArrayList<>();
+        if (progress == null) {
+            return events;
+        }
+
+        int goalState = progress.getGoalState();
+        int milestones = progress.getMilestones();
+        evaluate(progress, stats, events);
+        if (progress.getGoalState() != goalState || progress.getMilestones() != milestones) {
+            save(db, progress);
+        }
+        return events;
+    }
+
+    /**
+     * Starts tracking a new goal from the user's latest weight. Must run inside the goal update's transaction.
+     * Setting a goal the latest entry already meets is announced as reaching it.
+     *
+     * @param db         The database.
+     * @param stats      The user's current stats.
+     * @param goalWeight The new goal weight.
+     * @return The milestones reached by the new goal, as events to publish after commit.
+     */
+    public List<DataChangeEvent> onGoalChanged(SQLiteDatabase db, WeightStats stats, double goalWeight) {
+        List<DataChangeEvent> events = new ArrayList<>();
+        GoalProgress progress = startTracking(stats, goalWeight);
+        if (stats.getEntryCount() > 0) {
+            evaluate(progress, stats, events);
+        }
+        save(db, progress);
+        return events;
+    }
+
+    /**
+     * @return A fresh progress row for the goal, starting from the latest weight with nothing announced.
+     */
+    private GoalProgress startTracking(WeightStats stats, double goalWeight) {
+        GoalProgress progress = new GoalProgress(stats.getUserId());
+        progress.setGoalWeight(goalWeight);
+        progress.setStartWeight(stats.getEntryCount() > 0 ? stats.getLatestWeight() : goalWeight);
+        return progress;
+    }
+
+    /**
+     * Moves the progress to match the stats and collects the milestones crossed on the way.
+     */
+    private void evaluate(GoalProgress progress, WeightStats stats, List<DataChangeEvent> events) {
+        if (stats.getEntryCount() == 0) {
+            // Every entry was deleted; nothing is reached, but announced milestones stay announced
+            progress.setGoalState(DatabaseHelper.GOAL_STATE_ABOVE);
+            progress.setReachedDate(-1);
+            return;
+        }
+
+        double goalWeight = progress.getGoalWeight();
+        double latestWeight = stats.getLatestWeight();
+        boolean below = latestWeight <= goalWeight;
+
+        if (below && progress.getGoalState() == DatabaseHelper.GOAL_STATE_ABOVE) {
+            progress.setGoalState(DatabaseHelper.GOAL_STATE_BELOW);
+            progress.setReachedDate(stats.getLatestDate());
+            events.add(milestone(progress, stats, GoalMilestone.GOAL_REACHED));
+        } else if (!below && progress.getGoalState() == DatabaseHelper.GOAL_STATE_BELOW) {
+            // Back above the goal, e.g. the crossing entry was deleted; the next crossing is announced again
+            progress.setGoalState(DatabaseHelper.GOAL_STATE_ABOVE);
+            progress.setReachedDate(-1);
+        }
+
+        double distance = progress.getStartWeight() - goalWeight;
+        if (distance > 0) {
+            double percent = 100 * (progress.getStartWeight() - latestWeight) / distance;
+            for (GoalMilestone milestone : PROGRESS_MILESTONES) {
+                if (percent >= milestone.getPercent() && !progress.hasMilestone(milestone)) {
+                    progress.setMilestones(progress.getMilestones() | milestone.bit());
+                    events.add(milestone(progress, stats, milestone));
+                }
+            }
+        }
+
+        double rate = Math.abs(stats.getWeeklyRate());
+        boolean plateaued = progress.hasMilestone(GoalMilestone.PLATEAU);
+        if (!plateaued && !below && stats.getEntryCount() >= PLATEAU_MIN_ENTRIES && rate < PLATEAU_WEEKLY_RATE) {
+            progress.setMilestones(progress.getMilestones() | GoalMilestone.PLATEAU.bit());
+            events.add(milestone(progress, stats, GoalMilestone.PLATEAU));
+        } else if (plateaued && (below || rate >= PLATEAU_EXIT_WEEKLY_RATE)) {
+            progress.setMilestones(progress.getMilestones() & ~GoalMilestone.PLATEAU.bit());
+        }
+    }
+
+    private DataChangeEvent milestone(GoalProgress progress, WeightStats stats, GoalMilestone milestone) {
+        return DataChangeEvent.milestoneReached(progress.getUserId(), milestone, stats.getLatestDate(),
+                stats.getLatestWeight(), progress.getGoalWeight());
+    }
+
+    /**
+     * @return The stored progress row for the user, or null if there is none.
+     */
+    private GoalProgress load(SQLiteDatabase db, long userId) {
+        String selection = DatabaseHelper.COLUMN_USER_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(userId)};
+
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_GOAL_PROGRESS, null, selection, selectionArgs, null, null, null)) {
+            return RowMapper.mapFirst(cursor, new GoalProgressRowMapper());
+        }
+    }
+
+    /**
+     * @return The user's goal weight, or 0 if none is set.
+     */
+    private double loadGoalWeight(SQLiteDatabase db, long userId) {
+        String[] columns = {DatabaseHelper.COLUMN_GOAL_WEIGHT};
+        String selection = DatabaseHelper.COLUMN_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(userId)};
+
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_USERS, columns, selection, selectionArgs, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getDouble(0);
+            }
+        }
+        return 0;
+    }
+
+    private void save(SQLiteDatabase db, GoalProgress progress) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_USER_ID, progress.getUserId());
+        values.put(DatabaseHelper.COLUMN_GOAL_WEIGHT, progress.getGoalWeight());
+        values.put(DatabaseHelper.COLUMN_START_WEIGHT, progress.getStartWeight());
+        values.put(DatabaseHelper.COLUMN_GOAL_STATE, progress.getGoalState());
+        if (progress.getReachedDate() == -1) {
+            values.putNull(DatabaseHelper.COLUMN_REACHED_DATE);
+        } else {
+            values.put(DatabaseHelper.COLUMN_REACHED_DATE, progress.getReachedDate());
+        }
+        values.put(DatabaseHelper.COLUMN_MILESTONES, progress.getMilestones());
+        db.insertWithOnConflict(DatabaseHelper.TABLE_GOAL_PROGRESS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+}
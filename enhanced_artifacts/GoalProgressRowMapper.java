@@ -0,0 +1,43 @@
+/**
+ * Christopher Carnell
+ *
+ * This class maps rows of the goal_progress table to GoalProgress objects.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.database.Cursor;
+
+/**
+ * Maps full rows of the goal_progress table.
+ */
+public class GoalProgressRowMapper implements RowMapper<GoalProgress> {
+
+    private int userIdIndex;
+    private int goalWeightIndex;
+    private int startWeightIndex;
+    private int goalStateIndex;
+    private int reachedDateIndex;
+    private int milestonesIndex;
+
+    @Override
+    public void bind(Cursor cursor) {
+        userIdIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USER_ID);
+        goalWeightIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_WEIGHT);
+        startWeightIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_START_WEIGHT);
+        goalStateIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_STATE);
+        reachedDateIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_REACHED_DATE);
+        milestonesIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_MILESTONES);
+    }
+
+    @Override
+    public GoalProgress map(Cursor cursor) {
+        GoalProgress progress = new GoalProgress(cursor.getLong(userIdIndex));
+        progress.setGoalWeight(cursor.getDouble(goalWeightIndex));
+        progress.setStartWeight(cursor.getDouble(startWeightIndex));
+        progress.setGoalState(cursor.getInt(goalStateIndex));
+        progress.setReachedDate(cursor.isNull(reachedDateIndex) ? -1 : cursor.getLong(reachedDateIndex));
+        progress.setMilestones(cursor.getInt(milestonesIndex));
+        return progress;
+    }
+}
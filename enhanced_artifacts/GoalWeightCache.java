@@ -0,0 +1,97 @@
+/**
+ * Christopher Carnell
+ *
+ * This class is the process-wide cache of users' goal weights, shared by every DatabaseManager.
+ * It is thread-safe and size-bounded with least-recently-used eviction, and it keeps hit, miss and
+ * eviction counters so its effectiveness can be observed. Every write to the users table invalidates it.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.util.LruCache;
+
+/**
+ * Shared LRU cache of goal weights keyed by user ID.
+ */
+public final class GoalWeightCache {
+
+    private static final int MAX_ENTRIES = 64;
+
+    private static final GoalWeightCache INSTANCE = new GoalWeightCache(MAX_ENTRIES);
+
+    private final LruCache<Long, Double> cache;
+
+    // Bumped on every invalidation so a read that started before a write cannot re-cache a stale value
+    private long generation;
+
+    private GoalWeightCache(int maxEntries) {
+        cache = new LruCache<>(maxEntries);
+
+        // Publish the cache's own counters so hit rates show up in metrics snapshots
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("goalWeightCache.hits", this::hitCount);
+        metrics.gauge("goalWeightCache.misses", this::missCount);
+        metrics.gauge("goalWeightCache.evictions", this::evictionCount);
+        metrics.gauge("goalWeightCache.size", this::size);
+        metrics.gauge("goalWeightCache.hitRate", () -> {
+            int lookups = hitCount() + missCount();
+            return lookups == 0 ? 0.0 : (double) hitCount() / lookups;
+        });
+    }
+
+    public static GoalWeightCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param userId The user's ID.
+     * @return The cached goal weight, or null on a miss.
+     */
+    public Double get(long userId) {
+        return cache.get(userId);
+    }
+
+    /**
+     * @return A token to pass to {@link #put} once the goal weight has been read from the database.
+     */
+    public synchronized long currentGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches a goal weight read from the database, unless the users table was written since the read began.
+     *
+     * @param userId         The user's ID.
+     * @param goalWeight     The goal weight that was read.
+     * @param readGeneration The value of {@link #currentGeneration()} taken before the read.
+     */
+    public synchronized void put(long userId, double goalWeight, long readGeneration) {
+        if (readGeneration == generation) {
+            cache.put(userId, goalWeight);
+        }
+    }
+
+    /**
+     * Drops the cached goal weight for one user. Called after every write to that user's row.
+     *
+     * @param userId The user's ID.
+     */
+    public synchronized void invalidate(long userId) {
+        generation++;
+        cache.remove(userId);
+    }
+
+    /**
+     * Drops every cached goal weight.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        cache.evictAll();
+    }
+
+    //counters
+    public int hitCount() { return cache.hitCount(); }
+    public int missCount() { return cache.missCount(); }
+    public int evictionCount() { return cache.evictionCount(); }
+    public int size() { return cache.size(); }
+}
@@ -13,15 +13,27 @@ package com.cs360.weightwatcher;
 import androidx.appcompat.app.AppCompatActivity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
 public class MainActivity extends AppCompatActivity {
 
+    // Metrics are written to this file in the app's private storage every minute
+    private static final String METRICS_FILE = "metrics.txt";
+    private static final long METRICS_DUMP_INTERVAL_MILLIS = 60_000L;
+
     private EditText editTextUsername, editTextPassword;
     private Button buttonLogin, buttonRegister;
-    private DatabaseManager dbManager;
+    private AsyncDatabaseManager dbManager;
+    private PasswordHasher passwordHasher;
+
+    // The hash or verify in progress, cancelled if the user leaves the screen before it runs
+    private volatile CompletableFuture<?> pendingHash;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -35,10 +47,22 @@ public class MainActivity extends AppCompatActivity {
         buttonLogin = findViewById(R.id.buttonLogin);
         buttonRegister = findViewById(R.id.buttonRegister);
 
-        // Initialize DatabaseManager
-        dbManager = new DatabaseManager(this);
+        // Initialize DatabaseManager; all database calls run off the main thread
+        dbManager = new AsyncDatabaseManager(this);
         dbManager.open();
 
+        // Load the settings snapshot now so the read after login is usually already answered
+        UserSettingsStore.getInstance(this);
+
+        // Resume sending any SMS notifications left in the outbox
+        NotificationDispatcher.getInstance(this);
+
+        // Password hashing runs on its own background thread
+        passwordHasher = PasswordHasher.getInstance();
+
+        // Start the periodic metrics dump; this is a no-op if it is already running
+        Metrics.getInstance().startPeriodicDump(new File(getFilesDir(), METRICS_FILE), METRICS_DUMP_INTERVAL_MILLIS);
+
         // Handle Login button click
         buttonLogin.setOnClickListener(v -> handleLogin());
 
@@ -47,8 +71,8 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Handles the login process by validating inputs, hashing the password,
-     * and attempting to log in the user.
+     * Handles the login process by validating inputs, looking up the user
+     * and verifying the password against the stored hash in the background.
      */
     private void handleLogin() {
         String username = editTextUsername.getText().toString().trim();
@@ -58,19 +82,25 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        String hashedPassword = SecurityUtils.hashPassword(password);
+        CompletableFuture<User> login = dbManager.loginUser(username, password);
+        pendingHash = login;
+
+        dbManager.deliver(this, login, new AsyncDatabaseManager.Callback<User>() {
+            @Override
+            public void onResult(User user) {
+                if (user != null) {
+                    proceedAfterLogin(user);
+                } else {
+                    Toast.makeText(MainActivity.this, "Invalid username or password", Toast.LENGTH_SHORT).show();
+                }
+            }
 
-        try {
-            User user = dbManager.loginUser(username, hashedPassword);
-            if (user != null) {
-                proceedAfterLogin(user);
-            } else {
-                Toast.makeText(MainActivity.this, "Invalid username or password", Toast.LENGTH_SHORT).show();
+            @Override
+            public void onError(Throwable error) {
+                Toast.makeText(MainActivity.this, "An error occurred during login", Toast.LENGTH_SHORT).show();
+                Log.e("MainActivity", "Error during login", error);
             }
-        } catch (Exception e) {
-            Toast.makeText(MainActivity.this, "An error occurred during login", Toast.LENGTH_SHORT).show();
-            e.printStackTrace(); // Consider using proper logging in production
-        }
+        });
     }
 
     /**
@@ -85,23 +115,30 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        String hashedPassword = SecurityUtils.hashPassword(password);
-
-        try {
-            long userId = dbManager.registerUser(username, hashedPassword);
-            if (userId != -1) {
-                Toast.makeText(MainActivity.this, "Registration successful", Toast.LENGTH_SHORT).show();
+        // Hash on the hashing thread, then store on the writer thread
+        CompletableFuture<PasswordHash> hash = passwordHasher.hash(password);
+        pendingHash = hash;
+
+        dbManager.deliver(this, hash.thenCompose(passwordHash -> dbManager.registerUser(username, passwordHash)), new AsyncDatabaseManager.Callback<Long>() {
+            @Override
+            public void onResult(Long userId) {
+                if (userId != -1) {
+                    Toast.makeText(MainActivity.this, "Registration successful", Toast.LENGTH_SHORT).show();
+
+                    // Automatically log in the user after successful registration
+                    User user = new User(userId, username, hash.join().getStoredHash(), null, 0.0);
+                    proceedAfterLogin(user);
+                } else {
+                    Toast.makeText(MainActivity.this, "Registration failed: Username may already exist", Toast.LENGTH_SHORT).show();
+                }
+            }
 
-                // Automatically log in the user after successful registration
-                User user = new User(userId, username, hashedPassword, null, 0.0);
-                proceedAfterLogin(user);
-            } else {
-                Toast.makeText(MainActivity.this, "Registration failed: Username may already exist", Toast.LENGTH_SHORT).show();
+            @Override
+            public void onError(Throwable error) {
+                Toast.makeText(MainActivity.this, "An error occurred during registration", Toast.LENGTH_SHORT).show();
+                Log.e("MainActivity", "Error during registration", error);
             }
-        } catch (Exception e) {
-            Toast.makeText(MainActivity.this, "An error occurred during registration", Toast.LENGTH_SHORT).show();
-            e.printStackTrace();
-        }
+        });
     }
 
     /**
@@ -110,21 +147,21 @@ public class MainActivity extends AppCompatActivity {
      * @param user The logged-in user.
      */
     private void proceedAfterLogin(User user) {
-        boolean isSmsSetupCompleted = PreferenceUtils.isSmsSetupCompleted(this, user.getId());
-
-        if (isSmsSetupCompleted) {
-            // SMS setup already completed, proceed to DataDisplayActivity
-            Intent intent = new Intent(MainActivity.this, DataDisplayActivity.class);
-            intent.putExtra("user_id", user.getId());
-            startActivity(intent);
-            finish();
-        } else {
-            // SMS setup not completed, redirect to SmsPermissionActivity
-            Intent intent = new Intent(MainActivity.this, SmsPermissionActivity.class);
-            intent.putExtra("user_id", user.getId());
-            startActivity(intent);
-            finish();
-        }
+        dbManager.deliver(this, PreferenceUtils.isSmsSetupCompleted(this, user.getId()), isSmsSetupCompleted -> {
+            if (isSmsSetupCompleted) {
+                // SMS setup already completed, proceed to DataDisplayActivity
+                Intent intent = new Intent(MainActivity.this, DataDisplayActivity.class);
+                intent.putExtra("user_id", user.getId());
+                startActivity(intent);
+                finish();
+            } else {
+                // SMS setup not completed, redirect to SmsPermissionActivity
+                Intent intent = new Intent(MainActivity.this, SmsPermissionActivity.class);
+                intent.putExtra("user_id", user.getId());
+                startActivity(intent);
+                finish();
+            }
+        });
     }
 
     /**
@@ -145,6 +182,10 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        CompletableFuture<?> hash = pendingHash;
+        if (hash != null) {
+            hash.cancel(false);
+        }
         dbManager.close();
     }
 }
@@ -0,0 +1,220 @@
+/**
+ * Christopher Carnell
+ *
+ * This class is the process-wide registry for lightweight performance metrics.
+ * It holds counters, latency histograms and gauges by name, created on first use, so instrumenting a
+ * hot path is one lookup plus a few atomic operations and never blocks the caller.
+ * A snapshot of every metric can be taken at any time, and a background thread can write snapshots
+ * to a local file periodically so latency percentiles and cache hit rates can be collected in the field.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Named counters, latency histograms and gauges.
+ */
+public final class Metrics {
+
+    private static final String TAG = "Metrics";
+
+    private static volatile Metrics instance;
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService dumpExecutor;
+
+    private Metrics() {
+    }
+
+    /**
+     * @return The shared registry, created on first use.
+     */
+    public static Metrics getInstance() {
+        if (instance == null) {
+            synchronized (Metrics.class) {
+                if (instance == null) {
+                    instance = new Metrics();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param name The counter name, e.g. "db.errors".
+     * @return The counter, created if it does not exist yet.
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * @param name The histogram name, e.g. "db.getGoalWeight".
+     * @return The histogram, created if it does not exist yet.
+     */
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name. The supplier is called whenever a snapshot is taken,
+     * on the thread taking it, so it must be cheap and thread-safe.
+     *
+     * @param name  The gauge name, e.g. "goalWeightCache.hitRate".
+     * @param value Supplies the current value.
+     */
+    public void gauge(String name, Supplier<? extends Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Starts timing an operation. Use with try-with-resources so the latency is recorded on every exit path:
+     * {@code try (Metrics.Timer timer = Metrics.getInstance().time("db.getGoalWeight")) { ... }}
+     *
+     * @param name The histogram to record into.
+     * @return The running timer.
+     */
+    public Timer time(String name) {
+        return new Timer(histogram(name));
+    }
+
+    /**
+     * @return A copy of the current value of every metric.
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new HashMap<>();
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            counterValues.put(counter.getKey(), counter.getValue().get());
+        }
+
+        Map<String, Double> gaugeValues = new HashMap<>();
+        for (Map.Entry<String, Supplier<? extends Number>> gauge : gauges.entrySet()) {
+            try {
+                Number value = gauge.getValue().get();
+                gaugeValues.put(gauge.getKey(), value != null ? value.doubleValue() : Double.NaN);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Gauge " + gauge.getKey() + " failed", e);
+            }
+        }
+
+        Map<String, MetricsSnapshot.HistogramSnapshot> histogramValues = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> histogram : histograms.entrySet()) {
+            histogramValues.put(histogram.getKey(), histogram.getValue().snapshot());
+        }
+
+        return new MetricsSnapshot(System.currentTimeMillis(), counterValues, gaugeValues, histogramValues);
+    }
+
+    /**
+     * Writes a snapshot to a file every period on a background thread, replacing the previous dump.
+     * Calling it again while dumps are running does nothing.
+     *
+     * @param file         The dump file, e.g. new File(context.getFilesDir(), "metrics.txt").
+     * @param periodMillis The time between dumps.
+     */
+    public synchronized void startPeriodicDump(File file, long periodMillis) {
+        if (dumpExecutor != null) {
+            return;
+        }
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleWithFixedDelay(() -> dump(file), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic dump started by startPeriodicDump.
+     */
+    public synchronized void stopPeriodicDump() {
+        if (dumpExecutor != null) {
+            dumpExecutor.shutdown();
+            dumpExecutor = null;
+        }
+    }
+
+    /**
+     * Writes a snapshot to a file. The file is written to a temporary file first and then renamed,
+     * so a reader never sees a half-written dump.
+     *
+     * @param file The dump file.
+     * @return True if the dump was written.
+     */
+    public boolean dump(File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            writer.write(snapshot().toString());
+        } catch (IOException e) {
+            Log.e(TAG, "Unexpected error occurred in dump metrics.", e);
+            return false;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Could not replace metrics dump " + file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Measures the time from its creation until close() and records it into a histogram.
+     */
+    public static final class Timer implements AutoCloseable {
+        private final LatencyHistogram histogram;
+        private final long startNanos;
+
+        private Timer(LatencyHistogram histogram) {
+            this.histogram = histogram;
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            histogram.recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Christopher Carnell
+ *
+ * This model class is a point-in-time copy of every metric in the Metrics registry.
+ * It is what the snapshot API returns and what the periodic dump writes to disk, one metric per line.
+ */
+
+package com.cs360.weightwatcher;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class MetricsSnapshot {
+
+    private final long timestampMillis;
+    private final Map<String, Long> counters;
+    private final Map<String, Double> gauges;
+    private final Map<String, HistogramSnapshot> histograms;
+
+    /**
+     * @param timestampMillis When the snapshot was taken (wall clock).
+     * @param counters        Counter values by name.
+     * @param gauges          Gauge values by name.
+     * @param histograms      Latency summaries by name.
+     */
+    public MetricsSnapshot(long timestampMillis, Map<String, Long> counters, Map<String, Double> gauges,
+                           Map<String, HistogramSnapshot> histograms) {
+        this.timestampMillis = timestampMillis;
+        // Sorted so dumps are easy to diff
+        this.counters = new TreeMap<>(counters);
+        this.gauges = new TreeMap<>(gauges);
+        this.histograms = new TreeMap<>(histograms);
+    }
+
+    //getters
+    public long getTimestampMillis() { return timestampMillis; }
+    public Map<String, Long> getCounters() { return counters; }
+    public Map<String, Double> getGauges() { return gauges; }
+    public Map<String, HistogramSnapshot> getHistograms() { return histograms; }
+
+    /**
+     * @return One line per metric, e.g. "histogram db.getGoalWeight count=12 mean=0.41ms p50=0.30ms ...".
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("timestamp ").append(timestampMillis).append('\n');
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            builder.append("counter ").append(counter.getKey()).append(' ').append(counter.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Double> gauge : gauges.entrySet()) {
+            builder.append("gauge ").append(gauge.getKey()).append(' ').append(gauge.getValue()).append('\n');
+        }
+        for (Map.Entry<String, HistogramSnapshot> histogram : histograms.entrySet()) {
+            builder.append("histogram ").append(histogram.getKey()).append(' ').append(histogram.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Summary of one latency histogram. All times are in milliseconds.
+     */
+    public static class HistogramSnapshot {
+        private final long count;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        public HistogramSnapshot(long count, double meanMillis, double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+            this.count = count;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p95Millis = p95Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        //getters
+        public long getCount() { return count; }
+        public double getMeanMillis() { return meanMillis; }
+        public double getP50Millis() { return p50Millis; }
+        public double getP95Millis() { return p95Millis; }
+        public double getP99Millis() { return p99Millis; }
+        public double getMaxMillis() { return maxMillis; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "count=%d mean=%.3fms p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms",
+                    count, meanMillis, p50Millis, p95Millis, p99Millis, maxMillis);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * Christopher Carnell
+ *
+ * This class sends SMS notifications from the persistent sms_outbox table on a background thread.
+ * Notifications are queued instead of sent inline, so the goal check never waits on SmsManager.
+ * Each message carries a dedupe key, and the outbox keeps at most one message per user and key,
+ * so a burst of qualifying entries produces a single text. Sends are rate limited by a token bucket;
+ * failed sends are retried with exponential backoff and given up after a fixed number of attempts.
+ * The outbox survives process death, and pending messages are picked up again on the next start.
+ * Outbox reads and writes go through AsyncDatabaseManager (the shared reader pool and the writer thread) and
+ * each pass is a chain of futures, so no thread waits on the database. Sent and failed messages are deleted
+ * once they are older than the retention period, so the outbox does not grow without bound.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues SMS notifications in the outbox and delivers them through an SmsTransport.
+ */
+public final class NotificationDispatcher {
+
+    private static final String TAG = "NotificationDispatcher";
+
+    // Messages read from the outbox per batch
+    private static final int BATCH_SIZE = 20;
+
+    // Token bucket: up to RATE_LIMIT_BURST texts at once, then one per RATE_LIMIT_INTERVAL_MILLIS
+    private static final int RATE_LIMIT_BURST = 3;
+    private static final long RATE_LIMIT_INTERVAL_MILLIS = 20_000;
+
+    // Retry delays double from the base up to the cap; the message fails for good after MAX_ATTEMPTS
+    private static final long BASE_BACKOFF_MILLIS = 30_000;
+    private static final long MAX_BACKOFF_MILLIS = 60 * 60_000;
+    private static final int MAX_ATTEMPTS = 6;
+
+    // Sent and failed messages are kept this long, and old ones are looked for at most once per PRUNE_INTERVAL_MILLIS
+    private static final long RETENTION_MILLIS = 30L * 24 * 60 * 60_000;
+    private static final long PRUNE_INTERVAL_MILLIS = 60 * 60_000;
+
+    private static volatile NotificationDispatcher instance;
+
+    private final AsyncDatabaseManager dbManager;
+    private final Metrics metrics;
+
+    // Runs the timers and the steps between database calls, one at a time; it never touches the database
+    // itself, and sending never happens on a database thread
+    private final ScheduledExecutorService worker;
+
+    private volatile SmsTransport transport;
+
+    // Only touched on the worker thread
+    private ScheduledFuture<?> scheduledPass;
+    private boolean passRunning;
+    private boolean passRequested;
+    private double tokens = RATE_LIMIT_BURST;
+    private long tokensUpdatedAt = System.currentTimeMillis();
+    private long lastPrunedAt;
+
+    private NotificationDispatcher(Context context) {
+        dbManager = new AsyncDatabaseManager(context);
+        dbManager.open();
+        metrics = Metrics.getInstance();
+        transport = new SmsManagerTransport(context);
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sms-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Resume anything left in the outbox; the first read waits for the database to open
+        worker.execute(this::drain);
+    }
+
+    /**
+     * Returns the shared dispatcher, creating it and resuming the outbox on first use.
+     *
+     * @param context Any context.
+     * @return The shared NotificationDispatcher.
+     */
+    public static NotificationDispatcher getInstance(Context context) {
+        if (instance == null) {
+            synchronized (NotificationDispatcher.class) {
+                if (instance == null) {
+                    instance = new NotificationDispatcher(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the transport, e.g. with a local fake sender during testing.
+     *
+     * @param transport The transport used for every later send.
+     */
+    public void setTransport(SmsTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Queues a message and wakes the worker. Returns immediately.
+     *
+     * @param userId    The ID of the user to text; the phone number is read when the message is sent.
+     * @param dedupeKey Identifies the event; a second message with the same user and key is dropped.
+     * @param message   The text to send.
+     */
+    public void enqueue(long userId, String dedupeKey, String message) {
+        dbManager.enqueueSms(userId, dedupeKey, message, System.currentTimeMillis()).whenCompleteAsync((messageId, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Unexpected error occurred in enqueue sms.", error);
+                return;
+            }
+            if (messageId == -1) {
+                metrics.counter("sms.deduplicated").increment();
+                return;
+            }
+            metrics.counter("sms.enqueued").increment();
+            drain();
+        }, worker);
+    }
+
+    /**
+     * Queues the goal-reached text for one crossing of the goal. A repeat of the same crossing is dropped,
+     * but crossing again after going back above the goal is a new event and is sent.
+     *
+     * @param userId          The user's ID.
+     * @param goalWeight      The goal weight that was reached.
+     * @param reachedEpochDay The date of the entry that crossed the goal, as an epoch day.
+     */
+    public void notifyGoalReached(long userId, double goalWeight, long reachedEpochDay) {
+        enqueue(userId, goalReachedKey(goalWeight, reachedEpochDay),
+                "Congratulations! You've reached your goal weight! Keep up the great work!");
+    }
+
+    /**
+     * Builds the dedupe key for a goal crossing from the goal and the date it was reached, the same pair the
+     * goal_progress row records. Crossings of the same goal on different days get different keys.
+     *
+     * @return The dedupe key.
+     */
+    static String goalReachedKey(double goalWeight, long reachedEpochDay) {
+        return "goal_reached:" + goalWeight + ":" + reachedEpochDay;
+    }
+
+    /**
+     * Starts a pass that sends every due message the rate limit allows, unless one is already running,
+     * in which case another pass follows it. Runs on the worker thread.
+     */
+    private void drain() {
+        if (passRunning) {
+            passRequested = true;
+            return;
+        }
+        passRunning = true;
+        passRequested = false;
+        if (scheduledPass != null) {
+            scheduledPass.cancel(false);
+            scheduledPass = null;
+        }
+        nextBatch();
+    }
+
+    /**
+     * Reads the next batch of due messages on a reader thread and sends them on the worker thread.
+     * The next batch is only read once this batch's status writes have committed.
+     */
+    private void nextBatch() {
+        dbManager.getDueSmsMessages(System.currentTimeMillis(), BATCH_SIZE).whenCompleteAsync((due, error) -> {
+            if (error != null) {
+                failPass(error);
+                return;
+            }
+            List<CompletableFuture<Integer>> writes = new ArrayList<>();
+            for (OutboxMessage message : due) {
+                long waitMillis = acquireToken(System.currentTimeMillis());
+                if (waitMillis > 0) {
+                    afterWrites(writes, () -> finishPass(waitMillis));
+                    return;
+                }
+                writes.add(send(message));
+            }
+            if (due.size() < BATCH_SIZE) {
+                afterWrites(writes, () -> finishPass(0));
+            } else {
+                afterWrites(writes, this::nextBatch);
+            }
+        }, worker);
+    }
+
+    /**
+     * Runs the next step of the pass on the worker thread once every write has completed.
+     */
+    private void afterWrites(List<CompletableFuture<Integer>> writes, Runnable next) {
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).whenCompleteAsync((ignored, error) -> {
+            if (error != null) {
+                failPass(error);
+            } else {
+                next.run();
+            }
+        }, worker);
+    }
+
+    /**
+     * Ends a pass: prunes old messages and schedules the next pass, after the rate limit wait if there is one
+     * and otherwise when the earliest pending message is due.
+     */
+    private void finishPass(long rateLimitWaitMillis) {
+        pruneFinishedMessages();
+        if (rateLimitWaitMillis > 0) {
+            endPass(rateLimitWaitMillis);
+            return;
+        }
+        dbManager.getNextSmsAttemptTime().whenCompleteAsync((nextAttemptAt, error) -> {
+            if (error != null) {
+                failPass(error);
+                return;
+            }
+            endPass(nextAttemptAt == -1 ? -1 : Math.max(0, nextAttemptAt - System.currentTimeMillis()));
+        }, worker);
+    }
+
+    private void failPass(Throwable error) {
+        Log.e(TAG, "Unexpected error occurred in drain outbox.", error);
+        metrics.counter("sms.drain.errors").increment();
+        endPass(BASE_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param delayMillis When to run the next pass, or -1 if nothing is pending.
+     */
+    private void endPass(long delayMillis) {
+        passRunning = false;
+        if (passRequested) {
+            drain();
+        } else if (delayMillis >= 0) {
+            schedulePass(delayMillis);
+        }
+    }
+
+    /**
+     * Sends one message and records the outcome in the outbox.
+     *
+     * @return The status write.
+     */
+    private CompletableFuture<Integer> send(OutboxMessage message) {
+        long now = System.currentTimeMillis();
+        String phoneNumber = message.getPhoneNumber();
+        if (phoneNumber == null || phoneNumber.isEmpty()) {
+            Log.e(TAG, "Phone number is null or empty for user ID: " + message.getUserId());
+            return markFailed(message, message.getAttempts(), now);
+        }
+
+        try {
+            transport.send(phoneNumber, message.getMessage());
+            metrics.counter("sms.sent").increment();
+            Log.d(TAG, "SMS sent to user ID: " + message.getUserId());
+            return dbManager.updateSmsStatus(message.getId(), DatabaseHelper.SMS_STATUS_SENT, message.getAttempts(), now);
+        } catch (SecurityException | IllegalArgumentException e) {
+            // Retrying cannot fix a missing permission or an invalid number
+            Log.e(TAG, "SMS rejected for user ID: " + message.getUserId(), e);
+            return markFailed(message, message.getAttempts() + 1, now);
+        } catch (Exception e) {
+            int attempts = message.getAttempts() + 1;
+            if (attempts >= MAX_ATTEMPTS) {
+                Log.e(TAG, "Giving up on SMS for user ID: " + message.getUserId(), e);
+                return markFailed(message, attempts, now);
+            }
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempts - 1));
+            Log.e(TAG, "SMS failed for user ID: " + message.getUserId() + ", retrying in " + backoff + " ms", e);
+            metrics.counter("sms.retried").increment();
+            return dbManager.updateSmsStatus(message.getId(), DatabaseHelper.SMS_STATUS_PENDING, attempts, now + backoff);
+        }
+    }
+
+    private CompletableFuture<Integer> markFailed(OutboxMessage message, int attempts, long now) {
+        metrics.counter("sms.failed").increment();
+        return dbManager.updateSmsStatus(message.getId(), DatabaseHelper.SMS_STATUS_FAILED, attempts, now);
+    }
+
+    /**
+     * Deletes sent and failed messages older than the retention period, at most once per PRUNE_INTERVAL_MILLIS.
+     * Nothing waits for it.
+     */
+    private void pruneFinishedMessages() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrunedAt < PRUNE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastPrunedAt = now;
+        dbManager.deleteFinishedSmsMessages(now - RETENTION_MILLIS).whenComplete((rowsDeleted, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Unexpected error occurred in prune outbox.", error);
+            } else {
+                metrics.counter("sms.pruned").add(rowsDeleted);
+            }
+        });
+    }
+
+    /**
+     * Takes a token from the bucket if one is available.
+     *
+     * @param now The current time.
+     * @return 0 if a token was taken, otherwise how long until the next one is available.
+     */
+    private long acquireToken(long now) {
+        tokens = Math.min(RATE_LIMIT_BURST, tokens + (double) (now - tokensUpdatedAt) / RATE_LIMIT_INTERVAL_MILLIS);
+        tokensUpdatedAt = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        metrics.counter("sms.rateLimited").increment();
+        return (long) Math.ceil((1 - tokens) * RATE_LIMIT_INTERVAL_MILLIS);
+    }
+
+    private void schedulePass(long delayMillis) {
+        if (scheduledPass != null) {
+            scheduledPass.cancel(false);
+        }
+        scheduledPass = worker.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Christopher Carnell
+ *
+ * This model class represents a pending row of the sms_outbox table, joined with the user's phone number
+ * so the dispatcher can send it without a separate lookup.
+ */
+
+package com.cs360.weightwatcher;
+
+public class OutboxMessage {
+
+    private final long id;
+    private final long userId;
+    private final String phoneNumber;
+    private final String message;
+    private final int attempts;
+
+    /**
+     * @param id          The outbox row's ID.
+     * @param userId      The ID of the user the message is for.
+     * @param phoneNumber The user's current phone number, may be null or empty.
+     * @param message     The text to send.
+     * @param attempts    The number of failed send attempts so far.
+     */
+    public OutboxMessage(long id, long userId, String phoneNumber, String message, int attempts) {
+        this.id = id;
+        this.userId = userId;
+        this.phoneNumber = phoneNumber;
+        this.message = message;
+        this.attempts = attempts;
+    }
+
+    //getters
+    public long getId() { return id; }
+    public long getUserId() { return userId; }
+    public String getPhoneNumber() { return phoneNumber; }
+    public String getMessage() { return message; }
+    public int getAttempts() { return attempts; }
+}
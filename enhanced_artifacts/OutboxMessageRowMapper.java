@@ -0,0 +1,40 @@
+/**
+ * Christopher Carnell
+ *
+ * This class maps rows of the sms_outbox table, joined with the users table's phone number,
+ * to OutboxMessage objects.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.database.Cursor;
+
+/**
+ * Maps outbox rows selected with the user's phone_number column.
+ */
+public class OutboxMessageRowMapper implements RowMapper<OutboxMessage> {
+
+    private int idIndex;
+    private int userIdIndex;
+    private int phoneNumberIndex;
+    private int messageIndex;
+    private int attemptsIndex;
+
+    @Override
+    public void bind(Cursor cursor) {
+        idIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID);
+        userIdIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USER_ID);
+        phoneNumberIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PHONE_NUMBER);
+        messageIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_MESSAGE);
+        attemptsIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ATTEMPTS);
+    }
+
+    @Override
+    public OutboxMessage map(Cursor cursor) {
+        return new OutboxMessage(cursor.getLong(idIndex),
+                cursor.getLong(userIdIndex),
+                cursor.getString(phoneNumberIndex),
+                cursor.getString(messageIndex),
+                cursor.getInt(attemptsIndex));
+    }
+}
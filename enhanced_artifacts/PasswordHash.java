@@ -0,0 +1,110 @@
+/**
+ * Christopher Carnell
+ *
+ * This model class represents a stored password hash together with everything needed to check it:
+ * the parameter version, the PBKDF2 iteration count and key length, and the salt.
+ * Because the parameters are stored with each hash (in the users table's hash_version, hash_iterations,
+ * hash_key_length and salt columns), the cost can be raised for new hashes later without breaking logins
+ * for passwords that were hashed with the old cost; those are re-hashed the next time the user logs in.
+ * Version 0 is the unsalted SHA-256 hex digest stored by earlier versions of the app.
+ */
+
+package com.cs360.weightwatcher;
+
+import java.util.Base64;
+
+public class PasswordHash {
+
+    // Unsalted SHA-256, only ever read so the row can be upgraded on the user's next login
+    public static final int LEGACY_VERSION = 0;
+
+    // Bump the version whenever the iteration count or key length below changes
+    public static final int CURRENT_VERSION = 1;
+    public static final int CURRENT_ITERATIONS = 10000;
+    public static final int CURRENT_KEY_LENGTH = 256; // bits
+
+    private final int version;
+    private final int iterations;
+    private final int keyLength;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    public PasswordHash(int version, int iterations, int keyLength, byte[] salt, byte[] hash) {
+        this.version = version;
+        this.iterations = iterations;
+        this.keyLength = keyLength;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /**
+     * Builds a hash from the credential columns of a users row.
+     *
+     * @param version    The hash_version column.
+     * @param iterations The hash_iterations column.
+     * @param keyLength  The hash_key_length column.
+     * @param salt       The salt column, null for legacy rows.
+     * @param storedHash The password column: Base64 for PBKDF2 hashes, hex for legacy SHA-256 hashes.
+     * @return The hash, or null if the stored value cannot be decoded.
+     */
+    public static PasswordHash fromColumns(int version, int iterations, int keyLength, byte[] salt, String storedHash) {
+        if (storedHash == null) {
+            return null;
+        }
+        try {
+            if (version == LEGACY_VERSION) {
+                return new PasswordHash(LEGACY_VERSION, 0, 0, new byte[0], decodeHex(storedHash));
+            }
+            if (salt == null || salt.length == 0) {
+                return null;
+            }
+            return new PasswordHash(version, iterations, keyLength, salt, Base64.getDecoder().decode(storedHash));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The value to store in the password column.
+     */
+    public String getStoredHash() {
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    /**
+     * @return True if this is a legacy SHA-256 hash.
+     */
+    public boolean isLegacy() {
+        return version == LEGACY_VERSION;
+    }
+
+    /**
+     * @return True if the hash was made with older parameters than the current ones.
+     */
+    public boolean needsRehash() {
+        return version < CURRENT_VERSION;
+    }
+
+    private static byte[] decodeHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd-length hex string");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high == -1 || low == -1) {
+                throw new IllegalArgumentException("Invalid hex digit");
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    //getters
+    public int getVersion() { return version; }
+    public int getIterations() { return iterations; }
+    public int getKeyLength() { return keyLength; }
+    public byte[] getSalt() { return salt.clone(); }
+    public byte[] getHash() { return hash.clone(); }
+}
@@ -0,0 +1,137 @@
+/**
+ * Christopher Carnell
+ *
+ * This class hashes and verifies passwords on a dedicated background thread.
+ * PBKDF2 is deliberately slow, so running it on the main thread froze the login screen for the whole
+ * hashing time. Work is queued on one thread so the cost of a login is a fixed, tunable budget
+ * (the iteration count in PasswordHash) that never competes with rendering or with itself.
+ * Every call returns a CompletableFuture that the caller can cancel, e.g. when the user leaves the screen;
+ * cancelled work that has not started yet is skipped.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.os.Process;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide password hashing service.
+ */
+public final class PasswordHasher {
+
+    // Salt for the decoy hash computed when there is no stored hash to check against
+    private static final byte[] DUMMY_SALT = new byte[16];
+
+    private static volatile PasswordHasher instance;
+
+    private final ExecutorService executor;
+
+    private PasswordHasher() {
+        // The thread is only kept alive while there is work, since logins are rare
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, "password-hasher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    /**
+     * @return The shared hasher, created on first use.
+     */
+    public static PasswordHasher getInstance() {
+        if (instance == null) {
+            synchronized (PasswordHasher.class) {
+                if (instance == null) {
+                    instance = new PasswordHasher();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Hashes a new password with a fresh salt and the current parameters.
+     *
+     * @param password The plain-text password.
+     * @return A future with the hash to store, completed exceptionally if hashing fails.
+     */
+    public CompletableFuture<PasswordHash> hash(String password) {
+        return submit(() -> {
+            byte[] salt = SecurityUtils.generateSalt();
+            byte[] hash = SecurityUtils.hashPassword(password, salt,
+                    PasswordHash.CURRENT_ITERATIONS, PasswordHash.CURRENT_KEY_LENGTH);
+            if (hash == null) {
+                throw new IllegalStateException("Password hashing failed");
+            }
+            return new PasswordHash(PasswordHash.CURRENT_VERSION, PasswordHash.CURRENT_ITERATIONS,
+                    PasswordHash.CURRENT_KEY_LENGTH, salt, hash);
+        });
+    }
+
+    /**
+     * Checks a password against a stored hash, using the parameters stored with that hash, and compares
+     * the result in constant time. When there is no stored hash (e.g. an unknown username) or it is a fast
+     * legacy SHA-256 hash, a decoy hash at the current cost is still computed, so the response time reveals
+     * neither whether the user exists nor whether their row is still legacy.
+     *
+     * @param password The plain-text password entered by the user.
+     * @param expected The stored hash, or null if there is none.
+     * @return A future that completes with true if the password matches.
+     */
+    public CompletableFuture<Boolean> verify(String password, PasswordHash expected) {
+        return submit(() -> {
+            if (password == null || password.isEmpty()) {
+                return false;
+            }
+            if (expected == null) {
+                hashDecoy(password);
+                return false;
+            }
+            byte[] actual;
+            if (expected.isLegacy()) {
+                actual = SecurityUtils.hashPasswordLegacy(password);
+                hashDecoy(password);
+            } else {
+                actual = SecurityUtils.hashPassword(password, expected.getSalt(), expected.getIterations(), expected.getKeyLength());
+            }
+            return SecurityUtils.constantTimeEquals(actual, expected.getHash());
+        });
+    }
+
+    /**
+     * Spends the same time as verifying a current-cost hash; the result is discarded.
+     */
+    private static void hashDecoy(String password) {
+        SecurityUtils.hashPassword(password, DUMMY_SALT, PasswordHash.CURRENT_ITERATIONS, PasswordHash.CURRENT_KEY_LENGTH);
+    }
+
+    /**
+     * Runs work on the hashing thread, skipping it if the returned future was cancelled before it started.
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(work.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Christopher Carnell
+ *
+ * This class gives entry deletes a short undo window and coalesces them into one database write.
+ * Deleted rows disappear from the list immediately, but the physical delete is postponed until the window
+ * closes; every further delete within the window restarts it, so a burst of deletes (or one multi-select
+ * delete of hundreds of rows) is committed as a single batched transaction. Undo puts the rows back without
+ * touching the database at all. While their delete is pending the rows are also hidden in WeightEntryRepository,
+ * so reloads and later pages do not bring them back, and a queue created after a configuration change picks
+ * them up again with restore(). All methods must be called on the main thread.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CompletableFuture;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Hides deleted entries, then deletes them in one batch once the undo window closes.
+ */
+public class PendingDeleteQueue {
+
+    public static final long DEFAULT_UNDO_WINDOW_MILLIS = 4000;
+
+    /**
+     * Notified on the main thread when the pending deletes change.
+     */
+    public interface Listener {
+        /**
+         * @param pendingCount The number of deletes waiting for the undo window to close; 0 once committed or undone.
+         */
+        void onPendingChanged(int pendingCount);
+
+        /**
+         * The batched delete failed, so the database still has the entries.
+         *
+         * @param count The number of entries that were not deleted.
+         */
+        void onCommitFailed(int count);
+    }
+
+    private final Activity owner;
+    private final AsyncDatabaseManager dbManager;
+    private final WeightEntryRepository repository;
+    private final WeightEntrySeries weightEntries;
+    private final RecyclerView.Adapter<?> adapter;
+    private final Listener listener;
+    private final long undoWindowMillis;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable commitTask = this::commit;
+
+    // Entries hidden from the list but still in the database
+    private WeightEntrySeries pending;
+
+    public PendingDeleteQueue(Activity owner, AsyncDatabaseManager dbManager, WeightEntryRepository repository,
+                              WeightEntrySeries weightEntries, RecyclerView.Adapter<?> adapter, Listener listener) {
+        this(owner, dbManager, repository, weightEntries, adapter, listener, DEFAULT_UNDO_WINDOW_MILLIS);
+    }
+
+    public PendingDeleteQueue(Activity owner, AsyncDatabaseManager dbManager, WeightEntryRepository repository,
+                              WeightEntrySeries weightEntries, RecyclerView.Adapter<?> adapter, Listener listener,
+                              long undoWindowMillis) {
+        this.owner = owner;
+        this.dbManager = dbManager;
+        this.repository = repository;
+        this.weightEntries = weightEntries;
+        this.adapter = adapter;
+        this.listener = listener;
+        this.undoWindowMillis = undoWindowMillis;
+        // Deletes left pending by a previous instance of the screen, e.g. before a rotation
+        this.pending = repository.getHidden(weightEntries.getUserId());
+    }
+
+    /**
+     * Restarts the undo window for deletes that were pending when this queue was created, and reports them.
+     * Call once the listener is ready to show them.
+     */
+    public void restore() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        handler.removeCallbacks(commitTask);
+        handler.postDelayed(commitTask, undoWindowMillis);
+        listener.onPendingChanged(pending.size());
+    }
+
+    /**
+     * Removes entries from the list and schedules them for deletion when the undo window closes.
+     * The window restarts, so deletes made in quick succession are committed together.
+     *
+     * @param entries The entries to delete.
+     */
+    public void delete(WeightEntrySeries entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            long entryId = entries.getId(i);
+            int epochDay = entries.getEpochDay(i);
+            int position = weightEntries.remove(epochDay, entryId);
+            if (position != -1) {
+                adapter.notifyItemRemoved(position);
+            }
+            if (pending.indexOf(epochDay, entryId) == -1) {
+                pending.add(entryId, epochDay, entries.getWeight(i));
+            }
+        }
+        repository.hide(weightEntries.getUserId(), entries);
+        handler.removeCallbacks(commitTask);
+        handler.postDelayed(commitTask, undoWindowMillis);
+        listener.onPendingChanged(pending.size());
+    }
+
+    /**
+     * Puts every pending entry back into the list and cancels its delete.
+     */
+    public void undo() {
+        handler.removeCallbacks(commitTask);
+        for (int i = 0; i < pending.size(); i++) {
+            long entryId = pending.getId(i);
+            int epochDay = pending.getEpochDay(i);
+            if (weightEntries.indexOf(epochDay, entryId) == -1) {
+                int position = weightEntries.add(entryId, epochDay, pending.getWeight(i));
+                adapter.notifyItemInserted(position);
+            }
+        }
+        repository.unhide(weightEntries.getUserId(), pending);
+        pending = new WeightEntrySeries(weightEntries.getUserId());
+        listener.onPendingChanged(0);
+    }
+
+    /**
+     * Stops the undo window without committing, e.g. when the screen is recreated after a configuration change.
+     * The entries stay hidden in the repository, and the next queue for the user picks them up.
+     */
+    public void release() {
+        handler.removeCallbacks(commitTask);
+    }
+
+    /**
+     * Commits the pending deletes now instead of waiting for the undo window, e.g. when the screen is left.
+     */
+    public void flush() {
+        handler.removeCallbacks(commitTask);
+        commit();
+    }
+
+    /**
+     * @return The number of deletes waiting for the undo window to close.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Deletes every pending entry in one batched transaction on the writer thread.
+     */
+    private void commit() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        WeightEntrySeries batch = pending;
+        pending = new WeightEntrySeries(weightEntries.getUserId());
+
+        long[] entryIds = new long[batch.size()];
+        for (int i = 0; i < entryIds.length; i++) {
+            entryIds[i] = batch.getId(i);
+        }
+        listener.onPendingChanged(0);
+
+        // Show the entries again once the delete is over; by then the cache no longer has them unless it failed
+        long userId = weightEntries.getUserId();
+        CompletableFuture<Integer> delete = repository.deleteWeightEntries(entryIds)
+                .whenComplete((rowsDeleted, error) -> repository.unhide(userId, batch));
+
+        dbManager.deliver(owner, delete, new AsyncDatabaseManager.Callback<Integer>() {
+            @Override
+            public void onResult(Integer rowsDeleted) {
+                // The rows are already gone from the list; the change events only confirm it.
+                // Fewer rows than requested only means some were already deleted elsewhere, which is still done.
+                if (rowsDeleted < 0) {
+                    listener.onCommitFailed(batch.size());
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                AsyncDatabaseManager.Callback.super.onError(error);
+                listener.onCommitFailed(batch.size());
+            }
+        });
+    }
+}
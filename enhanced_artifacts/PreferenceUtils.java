@@ -2,46 +2,54 @@
  * Christopher Carnell
  * CS-360
  *
- * This utility class manages user preferences using SharedPreferences, maybe move this to the database later
+ * This utility class manages user preferences stored in the database's user_settings table.
  * It handles storing and retrieving whether a user has opted in for SMS notifications.
  * It provides methods to set and get the SMS opt-in status for a user.
+ * Reads come from UserSettingsStore's in-memory snapshot and complete once it is loaded, so they never block
+ * the calling thread; writes are atomic updates saved in batches on the writer thread.
  */
 
 
 package com.cs360.weightwatcher;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+
+import java.util.concurrent.CompletableFuture;
 
 public class PreferenceUtils {
 
-    private static final String PREFS_NAME = "WeightWatcherPrefs";
-    private static final String KEY_SMS_OPT_IN_PREFIX = "sms_opt_in_user_";
-    private static final String KEY_SMS_SETUP_COMPLETED_PREFIX = "sms_setup_completed_user_";
+    // The SharedPreferences file and keys used before version 8 of the database; read once by its upgrade
+    static final String LEGACY_PREFS_NAME = "WeightWatcherPrefs";
+    static final String LEGACY_KEY_SMS_OPT_IN_PREFIX = "sms_opt_in_user_";
+    static final String LEGACY_KEY_SMS_SETUP_COMPLETED_PREFIX = "sms_setup_completed_user_";
 
 
     public static void setSmsOptIn(Context context, long userId, boolean optIn) {
-        SharedPreferences sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        sharedPreferences.edit()
-                .putBoolean(KEY_SMS_OPT_IN_PREFIX + userId, optIn)
-                .apply();
+        UserSettingsStore.getInstance(context).update(userId, settings -> settings.withSmsOptIn(optIn));
     }
 
-    public static boolean isSmsOptIn(Context context, long userId) {
-        SharedPreferences sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        return sharedPreferences.getBoolean(KEY_SMS_OPT_IN_PREFIX + userId, false);
+    public static CompletableFuture<Boolean> isSmsOptIn(Context context, long userId) {
+        return UserSettingsStore.getInstance(context).getAsync(userId).thenApply(UserSettings::isSmsOptIn);
     }
 
     public static void setSmsSetupCompleted(Context context, long userId, boolean completed) {
-        SharedPreferences sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        sharedPreferences.edit()
-                .putBoolean(KEY_SMS_SETUP_COMPLETED_PREFIX + userId, completed)
-                .apply();
+        UserSettingsStore.getInstance(context).update(userId, settings -> settings.withSmsSetupCompleted(completed));
+    }
+
+    public static CompletableFuture<Boolean> isSmsSetupCompleted(Context context, long userId) {
+        return UserSettingsStore.getInstance(context).getAsync(userId).thenApply(UserSettings::isSmsSetupCompleted);
     }
 
-    public static boolean isSmsSetupCompleted(Context context, long userId) {
-        SharedPreferences sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        return sharedPreferences.getBoolean(KEY_SMS_SETUP_COMPLETED_PREFIX + userId, false);
+    /**
+     * Sets both SMS flags with one settings write.
+     *
+     * @param context   Any context.
+     * @param userId    The user's ID.
+     * @param optIn     True if the user wants SMS notifications.
+     * @param completed True once the user has answered the SMS setup screen.
+     */
+    public static void setSmsPreferences(Context context, long userId, boolean optIn, boolean completed) {
+        UserSettingsStore.getInstance(context).put(new UserSettings(userId, optIn, completed));
     }
 
 }
@@ -0,0 +1,73 @@
+/**
+ * Christopher Carnell
+ *
+ * This interface maps Cursor rows to model objects.
+ * A mapper looks up its column indices once per cursor in bind(), so mapping each row is only
+ * a few positional getter calls instead of a column-name lookup per field per row.
+ * Mappers hold the indices of the cursor they were bound to, so a new mapper is created for each query.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the current row of a bound Cursor to an object.
+ *
+ * @param <T> The type of object produced for each row.
+ */
+public interface RowMapper<T> {
+
+    /**
+     * Resolves the column indices this mapper needs. Called once per cursor, before the first row is mapped.
+     *
+     * @param cursor The cursor whose rows will be mapped.
+     * @throws IllegalArgumentException if a required column is missing.
+     */
+    void bind(Cursor cursor);
+
+    /**
+     * Maps the row the cursor is currently positioned on.
+     *
+     * @param cursor The cursor passed to bind().
+     * @return The mapped object.
+     */
+    T map(Cursor cursor);
+
+    /**
+     * Maps every remaining row of a cursor.
+     *
+     * @param cursor The cursor to read, may be null.
+     * @param mapper A mapper that has not been bound yet.
+     * @return The mapped rows, or an empty list if the cursor is null or empty.
+     */
+    static <T> List<T> mapAll(Cursor cursor, RowMapper<T> mapper) {
+        if (cursor == null) {
+            return new ArrayList<>();
+        }
+        List<T> rows = new ArrayList<>(Math.max(cursor.getCount(), 0));
+        mapper.bind(cursor);
+        while (cursor.moveToNext()) {
+            rows.add(mapper.map(cursor));
+        }
+        return rows;
+    }
+
+    /**
+     * Maps the first row of a cursor.
+     *
+     * @param cursor The cursor to read, may be null.
+     * @param mapper A mapper that has not been bound yet.
+     * @return The mapped row, or null if the cursor is null or empty.
+     */
+    static <T> T mapFirst(Cursor cursor, RowMapper<T> mapper) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            return null;
+        }
+        mapper.bind(cursor);
+        return mapper.map(cursor);
+    }
+}
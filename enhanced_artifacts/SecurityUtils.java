@@ -9,10 +9,11 @@
 
 package com.cs360.weightwatcher;
 import android.util.Log;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
-import java.util.Base64;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 
@@ -20,6 +21,17 @@ import javax.crypto.spec.PBEKeySpec;
 public class SecurityUtils {
 
     private static final String TAG = "SecurityUtils";
+
+    // SecretKeyFactory lookups walk the security providers and instances are not thread-safe,
+    // so each hashing thread looks one up once and reuses it
+    private static final ThreadLocal<SecretKeyFactory> KEY_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "PBKDF2WithHmacSHA256 is not available", e);
+            return null;
+        }
+    });
     
     /**
      * Generates a unique salt for each user, ensuring that the same password
@@ -35,15 +47,18 @@ public class SecurityUtils {
     }
 
     /**
-     * Hashes a password using the PBKDF2WithHmacSHA256 algorithm, combined with a unique salt.
-     * This method uses 10,000 iterations and a 256-bit derived key length, which is considered secure.
+     * Hashes a password using PBKDF2WithHmacSHA256 with explicit cost parameters.
+     * This is CPU-bound work that takes tens of milliseconds, so it should not run on the main thread;
+     * PasswordHasher runs it on a dedicated background thread.
      *
-     * @param password The plain-text password to be hashed.
-     * @param salt The salt associated with this user/password, provided as a 16-byte array.
-     * @return A Base64-encoded hash of the password, or null if an error occurs during hashing.
+     * @param password   The plain-text password to be hashed.
+     * @param salt       The salt associated with this user/password.
+     * @param iterations The PBKDF2 iteration count.
+     * @param keyLength  The derived key length in bits.
+     * @return The raw derived key, or null if an error occurs during hashing.
      * @throws IllegalArgumentException if the password is null or empty, or if salt is null/empty.
      */
-    public static String hashPassword(String password, byte[] salt) {
+    public static byte[] hashPassword(String password, byte[] salt, int iterations, int keyLength) {
         if (password == null || password.isEmpty()) {
             throw new IllegalArgumentException("Password cannot be null or empty");
         }
@@ -51,39 +66,49 @@ public class SecurityUtils {
             throw new IllegalArgumentException("Salt cannot be null or empty");
         }
 
-        try {
-            int iterations = 10000;
-            int keyLength = 256; // bits
-            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, keyLength);
-            SecretKeyFactory skf = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            byte[] hash = skf.generateSecret(spec).getEncoded();
-            return Base64.getEncoder().encodeToString(hash);
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, keyLength);
+        try (Metrics.Timer timer = Metrics.getInstance().time("security.hashPassword")) {
+            SecretKeyFactory skf = KEY_FACTORY.get();
+            if (skf == null) {
+                return null;
+            }
+            return skf.generateSecret(spec).getEncoded();
+        } catch (InvalidKeySpecException e) {
             // Log the exception using Android's logging system instead of printing stack trace.
             Log.e(TAG, "Failed to hash password", e);
+            Metrics.getInstance().counter("security.hashPassword.errors").increment();
             return null;
+        } finally {
+            spec.clearPassword();
         }
     }
 
     /**
-     * @param candidatePassword The plain-text password entered by the user at login.
-     * @param storedHash The Base64-encoded hashed password from the database.
-     * @param storedSalt The salt used when hashing the password, retrieved from the database.
-     * @return true if the candidatePassword hashes to the storedHash, false otherwise.
+     * Hashes a password with the unsalted SHA-256 scheme used by earlier versions of the app.
+     * Only used to check passwords stored before salted hashing was introduced, so they can be upgraded.
+     *
+     * @param password The plain-text password.
+     * @return The raw SHA-256 digest, or null if SHA-256 is unavailable.
      */
-    public static boolean verifyPassword(String candidatePassword, String storedHash, byte[] storedSalt) {
-        if (candidatePassword == null || candidatePassword.isEmpty()) {
-            return false;
-        }
-        if (storedHash == null || storedHash.isEmpty()) {
-            return false;
-        }
-        if (storedSalt == null || storedSalt.length == 0) {
-            return false;
+    public static byte[] hashPasswordLegacy(String password) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return md.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "Failed to hash password", e);
+            return null;
         }
+    }
 
-        String candidateHash = hashPassword(candidatePassword, storedSalt);
-        return candidateHash != null && candidateHash.equals(storedHash);
+    /**
+     * Compares two hashes in time that depends only on their length, so a failed login does not reveal
+     * how many leading bytes of the hash were right.
+     *
+     * @param a The first hash, may be null.
+     * @param b The second hash, may be null.
+     * @return True if both are non-null and equal.
+     */
+    public static boolean constantTimeEquals(byte[] a, byte[] b) {
+        return a != null && b != null && MessageDigest.isEqual(a, b);
     }
 }
-
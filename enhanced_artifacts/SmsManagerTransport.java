@@ -0,0 +1,36 @@
+/**
+ * Christopher Carnell
+ *
+ * This class sends NotificationDispatcher's messages through the platform SmsManager.
+ * It checks the SEND_SMS permission itself, because the permission can be revoked between the time a
+ * message is queued and the time it is sent.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.telephony.SmsManager;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * SmsTransport backed by SmsManager.
+ */
+public class SmsManagerTransport implements SmsTransport {
+
+    private final Context context;
+
+    public SmsManagerTransport(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public void send(String phoneNumber, String message) {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
+            throw new SecurityException("SEND_SMS permission not granted");
+        }
+        SmsManager.getDefault().sendTextMessage(phoneNumber, null, message, null, null);
+    }
+}
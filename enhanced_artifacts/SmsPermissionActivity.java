@@ -27,15 +27,15 @@ public class SmsPermissionActivity extends AppCompatActivity {
     private EditText editTextPhoneNumber;
 
     private long userId;
-    private DatabaseManager dbManager;
+    private AsyncDatabaseManager dbManager;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_sms_permission);
 
-        // Initialize DatabaseManager
-        dbManager = new DatabaseManager(this);
+        // Initialize DatabaseManager; all database calls run off the main thread
+        dbManager = new AsyncDatabaseManager(this);
         dbManager.open();
         editTextPhoneNumber = findViewById(R.id.editTextPhoneNumber);
 
@@ -71,25 +71,21 @@ public class SmsPermissionActivity extends AppCompatActivity {
             }
 
             // Save phone number to database
-            int result = dbManager.updateUserPhoneNumber(userId, phoneNumber);
-            if (result > 0) {
-                PreferenceUtils.setSmsOptIn(this, userId, true);
-
-                // Mark SMS setup as completed
-                PreferenceUtils.setSmsSetupCompleted(this, userId, true);
-
-                checkSmsPermission();
-            } else {
-                Toast.makeText(this, "Failed to save phone number", Toast.LENGTH_SHORT).show();
-            }
+            dbManager.deliver(this, dbManager.updateUserPhoneNumber(userId, phoneNumber), result -> {
+                if (result > 0) {
+                    // Opt in and mark SMS setup as completed
+                    PreferenceUtils.setSmsPreferences(this, userId, true, true);
+
+                    checkSmsPermission();
+                } else {
+                    Toast.makeText(this, "Failed to save phone number", Toast.LENGTH_SHORT).show();
+                }
+            });
         });
 
         buttonDenySms.setOnClickListener(v -> {
-            // User does not want SMS notifications
-            PreferenceUtils.setSmsOptIn(this, userId, false);
-
-            // Mark SMS setup as completed
-            PreferenceUtils.setSmsSetupCompleted(this, userId, true);
+            // User does not want SMS notifications; mark SMS setup as completed
+            PreferenceUtils.setSmsPreferences(this, userId, false, true);
 
             proceedToDataDisplay();
         });
@@ -0,0 +1,26 @@
+/**
+ * Christopher Carnell
+ *
+ * This interface is the pluggable sending step of NotificationDispatcher.
+ * The app uses SmsManagerTransport; a fake that records messages locally can be installed with
+ * NotificationDispatcher.setTransport to exercise the outbox without a SIM or the SEND_SMS permission.
+ */
+
+package com.cs360.weightwatcher;
+
+/**
+ * Sends one text message. Called on the dispatcher's background thread.
+ */
+public interface SmsTransport {
+
+    /**
+     * Sends a text message.
+     *
+     * @param phoneNumber The destination number.
+     * @param message     The text to send.
+     * @throws SecurityException        if sending is not permitted; the message is not retried.
+     * @throws IllegalArgumentException if the number or message is invalid; the message is not retried.
+     * @throws Exception                on any other failure; the message is retried with backoff.
+     */
+    void send(String phoneNumber, String message) throws Exception;
+}
@@ -3,7 +3,8 @@
  * CS-360
  *
  * This model class represents a user.
- * It contains user-related data such as ID, username, hashed password, phone number, and goal weight.
+ * It contains user-related data such as ID, username, hashed password, phone number, and goal weight,
+ * and the parameters the password was hashed with when they were read for a login.
  * It provides getters and setters for accessing and modifying user data.
  */
 
@@ -16,6 +17,7 @@ public class User {
     private String password;
     private String phoneNumber;
     private double goalWeight;
+    private PasswordHash passwordHash;
 
     public User(long id, String username, String password, String phoneNumber, double goalWeight) {
         this.id = id;
@@ -31,10 +33,12 @@ public class User {
     public String getPassword() { return password; }
     public String getPhoneNumber() { return phoneNumber; }
     public double getGoalWeight() { return goalWeight; }
+    public PasswordHash getPasswordHash() { return passwordHash; }
 
     public void setId(long id) { this.id = id; }
     public void setUsername(String username) { this.username = username; }
     public void setPassword(String password) { this.password = password; }
     public void setPhoneNumber(String phoneNumber) { this.phoneNumber = phoneNumber; }
     public void setGoalWeight(double goalWeight) { this.goalWeight = goalWeight; }
+    public void setPasswordHash(PasswordHash passwordHash) { this.passwordHash = passwordHash; }
 }
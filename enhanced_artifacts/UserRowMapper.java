@@ -0,0 +1,61 @@
+/**
+ * Christopher Carnell
+ *
+ * This class maps rows of the users table to User objects.
+ * The credential columns (salt and hash parameters) are optional; when the query selects them,
+ * the mapped User also carries its PasswordHash so a login can be verified without a second query.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.database.Cursor;
+
+/**
+ * Maps (_id, username, password, phone_number, goal_weight) rows of the users table.
+ */
+public class UserRowMapper implements RowMapper<User> {
+
+    private int idIndex;
+    private int usernameIndex;
+    private int passwordIndex;
+    private int phoneNumberIndex;
+    private int goalWeightIndex;
+    private int saltIndex;
+    private int hashVersionIndex;
+    private int hashIterationsIndex;
+    private int hashKeyLengthIndex;
+
+    @Override
+    public void bind(Cursor cursor) {
+        idIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID);
+        usernameIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USERNAME);
+        passwordIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PASSWORD);
+        phoneNumberIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PHONE_NUMBER);
+        goalWeightIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_WEIGHT);
+        saltIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_SALT);
+        hashVersionIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_HASH_VERSION);
+        hashIterationsIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_HASH_ITERATIONS);
+        hashKeyLengthIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_HASH_KEY_LENGTH);
+    }
+
+    @Override
+    public User map(Cursor cursor) {
+        User user = new User(
+                cursor.getLong(idIndex),
+                cursor.getString(usernameIndex),
+                cursor.getString(passwordIndex),
+                cursor.getString(phoneNumberIndex),
+                cursor.getDouble(goalWeightIndex)
+        );
+        if (hashVersionIndex != -1 && hashIterationsIndex != -1 && hashKeyLengthIndex != -1 && saltIndex != -1) {
+            user.setPasswordHash(PasswordHash.fromColumns(
+                    cursor.getInt(hashVersionIndex),
+                    cursor.getInt(hashIterationsIndex),
+                    cursor.getInt(hashKeyLengthIndex),
+                    cursor.isNull(saltIndex) ? null : cursor.getBlob(saltIndex),
+                    user.getPassword()
+            ));
+        }
+        return user;
+    }
+}
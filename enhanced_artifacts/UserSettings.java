@@ -0,0 +1,48 @@
+/**
+ * Christopher Carnell
+ *
+ * This model class represents one row of the user_settings table: a user's SMS notification flags.
+ * Instances are immutable because UserSettingsStore shares them between threads through its snapshot;
+ * a change is made by creating a new instance with the with...() methods.
+ */
+
+package com.cs360.weightwatcher;
+
+public class UserSettings {
+
+    private final long userId;
+    private final boolean smsOptIn;
+    private final boolean smsSetupCompleted;
+
+    /**
+     * @param userId            The user's ID.
+     * @param smsOptIn          True if the user wants an SMS when the goal weight is reached.
+     * @param smsSetupCompleted True once the user has answered the SMS setup screen.
+     */
+    public UserSettings(long userId, boolean smsOptIn, boolean smsSetupCompleted) {
+        this.userId = userId;
+        this.smsOptIn = smsOptIn;
+        this.smsSetupCompleted = smsSetupCompleted;
+    }
+
+    /**
+     * @param userId The user's ID.
+     * @return The settings of a user who has no row yet.
+     */
+    public static UserSettings defaults(long userId) {
+        return new UserSettings(userId, false, false);
+    }
+
+    public UserSettings withSmsOptIn(boolean smsOptIn) {
+        return new UserSettings(userId, smsOptIn, smsSetupCompleted);
+    }
+
+    public UserSettings withSmsSetupCompleted(boolean smsSetupCompleted) {
+        return new UserSettings(userId, smsOptIn, smsSetupCompleted);
+    }
+
+    //getters
+    public long getUserId() { return userId; }
+    public boolean isSmsOptIn() { return smsOptIn; }
+    public boolean isSmsSetupCompleted() { return smsSetupCompleted; }
+}
@@ -0,0 +1,33 @@
+/**
+ * Christopher Carnell
+ *
+ * This class maps rows of the user_settings table to UserSettings objects.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.database.Cursor;
+
+/**
+ * Maps full rows of the user_settings table.
+ */
+public class UserSettingsRowMapper implements RowMapper<UserSettings> {
+
+    private int userIdIndex;
+    private int smsOptInIndex;
+    private int smsSetupCompletedIndex;
+
+    @Override
+    public void bind(Cursor cursor) {
+        userIdIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USER_ID);
+        smsOptInIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_SMS_OPT_IN);
+        smsSetupCompletedIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_SMS_SETUP_COMPLETED);
+    }
+
+    @Override
+    public UserSettings map(Cursor cursor) {
+        return new UserSettings(cursor.getLong(userIdIndex),
+                cursor.getInt(smsOptInIndex) != 0,
+                cursor.getInt(smsSetupCompletedIndex) != 0);
+    }
+}
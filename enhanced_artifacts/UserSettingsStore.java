@@ -0,0 +1,209 @@
+/**
+ * Christopher Carnell
+ *
+ * This class is the process-wide store for users' settings, backed by the user_settings table.
+ * The whole table (one small row per user) is loaded once into an in-memory snapshot on the writer thread,
+ * so reads are a map lookup with no I/O and never wait for the database. Until the load finishes, get()
+ * returns defaults; callers that need the stored value use getAsync(), which completes once it is loaded.
+ * Writes are read-modify-write updates applied to the snapshot under a lock and queued for the writer thread,
+ * where every change made since the last flush is saved in a single transaction. Updates made before the load
+ * finishes are held back and applied, in order, on top of the loaded rows.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
+
+/**
+ * Loaded-once, write-behind cache of the user_settings table.
+ */
+public final class UserSettingsStore {
+
+    private static volatile UserSettingsStore instance;
+
+    private final DatabaseManager dbManager;
+    private final DatabaseExecutors executors;
+
+    // Completes once the snapshot holds the table's rows
+    private final CompletableFuture<Void> loaded;
+
+    // Replaced, never modified, so readers on any thread see a consistent map without locking
+    private volatile Map<Long, UserSettings> snapshot = Collections.emptyMap();
+
+    // Guarded by this: set once the loaded rows are in the snapshot, and the updates made before that
+    private boolean ready;
+    private final List<DeferredUpdate> deferredUpdates = new ArrayList<>();
+
+    // Changes not yet saved, keyed by user ID so repeated changes to one user collapse into one row write
+    private final Map<Long, UserSettings> pendingWrites = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    private UserSettingsStore(Context context) {
+        dbManager = new DatabaseManager(context);
+        executors = DatabaseExecutors.getInstance();
+        // Loaded on the writer thread so every later flush is queued behind it
+        loaded = CompletableFuture.runAsync(this::load, executors.writer());
+    }
+
+    /**
+     * Returns the shared store, starting the snapshot load on first use.
+     *
+     * @param context Any context.
+     * @return The shared UserSettingsStore.
+     */
+    public static UserSettingsStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (UserSettingsStore.class) {
+                if (instance == null) {
+                    instance = new UserSettingsStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns a user's settings from the snapshot without waiting. Safe on any thread.
+     *
+     * @param userId The user's ID.
+     * @return The user's settings, or the defaults if the user has none saved or the snapshot is not loaded yet.
+     */
+    public UserSettings get(long userId) {
+        UserSettings settings = snapshot.get(userId);
+        return settings != null ? settings : UserSettings.defaults(userId);
+    }
+
+    /**
+     * Returns a user's settings once the snapshot is loaded. Completes immediately after the first load.
+     *
+     * @param userId The user's ID.
+     * @return A future with the user's settings, or the defaults if the user has none saved or the load failed.
+     */
+    public CompletableFuture<UserSettings> getAsync(long userId) {
+        return loaded.handle((ignored, error) -> get(userId));
+    }
+
+    /**
+     * Replaces a user's settings.
+     *
+     * @param settings The user's new settings.
+     */
+    public void put(UserSettings settings) {
+        update(settings.getUserId(), current -> settings);
+    }
+
+    /**
+     * Changes a user's settings atomically: the change is applied to the current settings under the store's
+     * lock, so concurrent updates to different fields do not overwrite each other. The snapshot changes
+     * immediately (or, before the initial load finishes, as soon as it does); the row is saved on the writer
+     * thread together with any other changes made before the flush runs.
+     *
+     * @param userId The user's ID.
+     * @param change Computes the new settings from the current ones.
+     */
+    public void update(long userId, UnaryOperator<UserSettings> change) {
+        synchronized (this) {
+            if (!ready) {
+                deferredUpdates.add(new DeferredUpdate(userId, change));
+                return;
+            }
+            if (!apply(userId, change)) {
+                return;
+            }
+        }
+        executors.writer().execute(this::flush);
+    }
+
+    /**
+     * Loads the table into the snapshot, then applies the updates made while it was loading. Runs on the writer thread.
+     */
+    private void load() {
+        Map<Long, UserSettings> rows = Collections.emptyMap();
+        try {
+            dbManager.open();
+            rows = dbManager.getAllUserSettings();
+        } catch (Exception e) {
+            // An empty snapshot means defaults are used
+            Log.e("UserSettingsStore", "Unexpected error occurred in load user settings.", e);
+        }
+
+        boolean flush = false;
+        synchronized (this) {
+            snapshot = Collections.unmodifiableMap(rows);
+            ready = true;
+            for (DeferredUpdate deferred : deferredUpdates) {
+                flush |= apply(deferred.userId, deferred.change);
+            }
+            deferredUpdates.clear();
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies a change to the snapshot and queues the row for saving. Must hold the lock.
+     *
+     * @return True if a flush must be scheduled.
+     */
+    private boolean apply(long userId, UnaryOperator<UserSettings> change) {
+        UserSettings settings = change.apply(get(userId));
+        Map<Long, UserSettings> updated = new HashMap<>(snapshot);
+        updated.put(userId, settings);
+        snapshot = Collections.unmodifiableMap(updated);
+
+        pendingWrites.put(userId, settings);
+        if (flushScheduled) {
+            return false;
+        }
+        flushScheduled = true;
+        return true;
+    }
+
+    /**
+     * Saves every pending change in one transaction. Runs on the writer thread.
+     */
+    private void flush() {
+        List<UserSettings> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pendingWrites.values());
+            pendingWrites.clear();
+            flushScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (!dbManager.saveUserSettings(batch)) {
+            // The snapshot keeps the new values for this process; they are saved again with the next change
+            synchronized (this) {
+                for (UserSettings settings : batch) {
+                    pendingWrites.putIfAbsent(settings.getUserId(), settings);
+                }
+            }
+            Log.e("UserSettingsStore", "Failed to save settings for " + batch.size() + " users.");
+        }
+    }
+
+    /**
+     * An update made before the initial load finished.
+     */
+    private static final class DeferredUpdate {
+        final long userId;
+        final UnaryOperator<UserSettings> change;
+
+        DeferredUpdate(long userId, UnaryOperator<UserSettings> change) {
+            this.userId = userId;
+            this.change = change;
+        }
+    }
+}
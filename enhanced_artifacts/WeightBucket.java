@@ -0,0 +1,53 @@
+/**
+ * Christopher Carnell
+ *
+ * This model class represents one point of a downsampled weight series.
+ * It covers a day, week or month of a user's entries and holds their count, average, minimum and maximum.
+ * Weekly and monthly buckets are read straight from the pre-aggregated entry_rollups table.
+ */
+
+package com.cs360.weightwatcher;
+
+public class WeightBucket {
+
+    /**
+     * The width of each bucket in a series.
+     */
+    public enum Resolution {
+        DAY,
+        WEEK,
+        MONTH
+    }
+
+    private final long bucketStart;
+    private final long bucketEnd;
+    private final int entryCount;
+    private final double averageWeight;
+    private final double minWeight;
+    private final double maxWeight;
+
+    /**
+     * @param bucketStart   The first epoch day covered by the bucket.
+     * @param bucketEnd     The last epoch day covered by the bucket (inclusive).
+     * @param entryCount    The number of entries in the bucket.
+     * @param averageWeight The mean weight of the entries.
+     * @param minWeight     The lowest weight in the bucket.
+     * @param maxWeight     The highest weight in the bucket.
+     */
+    public WeightBucket(long bucketStart, long bucketEnd, int entryCount, double averageWeight, double minWeight, double maxWeight) {
+        this.bucketStart = bucketStart;
+        this.bucketEnd = bucketEnd;
+        this.entryCount = entryCount;
+        this.averageWeight = averageWeight;
+        this.minWeight = minWeight;
+        this.maxWeight = maxWeight;
+    }
+
+    //getters
+    public long getBucketStart() { return bucketStart; }
+    public long getBucketEnd() { return bucketEnd; }
+    public int getEntryCount() { return entryCount; }
+    public double getAverageWeight() { return averageWeight; }
+    public double getMinWeight() { return minWeight; }
+    public double getMaxWeight() { return maxWeight; }
+}
@@ -0,0 +1,92 @@
+/**
+ * Christopher Carnell
+ *
+ * This class exports a user's weight history as CSV ("date,weight" per line).
+ * It walks a database cursor row by row and writes through a fixed-size buffer into a channel,
+ * so memory use stays flat no matter how many entries the user has.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.database.Cursor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDate;
+
+/**
+ * Streams weight entries from the database to CSV.
+ */
+public class WeightCsvExporter {
+
+    public static final String HEADER = "date,weight";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DatabaseManager dbManager;
+
+    public WeightCsvExporter(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * Writes all of the user's entries, oldest first, to the channel.
+     * The channel is flushed but not closed.
+     *
+     * @param userId  The user's ID.
+     * @param channel The destination channel.
+     * @return The number of entries written.
+     * @throws IOException if writing to the channel fails or the entries cannot be read.
+     */
+    public long export(long userId, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        StringBuilder line = new StringBuilder(32);
+        long rowCount = 0;
+
+        line.append(HEADER).append('\n');
+        put(line, buffer, channel);
+
+        try (Cursor cursor = dbManager.queryWeightEntries(userId)) {
+            if (cursor == null) {
+                throw new IOException("Unable to read weight entries for user ID: " + userId);
+            }
+
+            int dateIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DATE);
+            int weightIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_WEIGHT);
+
+            while (cursor.moveToNext()) {
+                line.setLength(0);
+                line.append(LocalDate.ofEpochDay(cursor.getLong(dateIndex)))
+                        .append(',')
+                        .append(cursor.getDouble(weightIndex))
+                        .append('\n');
+                put(line, buffer, channel);
+                rowCount++;
+            }
+        }
+
+        flush(buffer, channel);
+        return rowCount;
+    }
+
+    /**
+     * Copies one line into the buffer, draining the buffer to the channel first if it is too full.
+     * CSV lines here are plain ASCII, so each char maps to exactly one byte.
+     */
+    private static void put(CharSequence line, ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        if (buffer.remaining() < line.length()) {
+            flush(buffer, channel);
+        }
+        for (int i = 0; i < line.length(); i++) {
+            buffer.put((byte) line.charAt(i));
+        }
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
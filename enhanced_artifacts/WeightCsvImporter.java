@@ -0,0 +1,119 @@
+/**
+ * Christopher Carnell
+ *
+ * This class imports a weight history from CSV ("date,weight" per line, dates in yyyy-MM-dd format).
+ * It reads the input in buffered chunks and hands fixed-size batches to DatabaseManager's bulk insert,
+ * so each batch is one transaction and memory use stays flat no matter how large the file is.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams CSV rows into the entries table in batched transactions.
+ */
+public class WeightCsvImporter {
+
+    private static final String TAG = "WeightCsvImporter";
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final DatabaseManager dbManager;
+    private final int batchSize;
+
+    public WeightCsvImporter(DatabaseManager dbManager) {
+        this(dbManager, DEFAULT_BATCH_SIZE);
+    }
+
+    public WeightCsvImporter(DatabaseManager dbManager, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.dbManager = dbManager;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reads CSV rows from the channel and inserts them for the user.
+     * A leading "date,weight" header line is skipped. Malformed rows are counted as rejected.
+     * The channel is not closed.
+     *
+     * @param userId  The user's ID.
+     * @param channel The source channel.
+     * @return The number of rows inserted and rejected.
+     * @throws IOException if reading from the channel fails.
+     */
+    public BulkInsertResult importFrom(long userId, ReadableByteChannel channel) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), READ_BUFFER_SIZE);
+
+        BulkInsertResult result = new BulkInsertResult(0, 0);
+        List<WeightEntry> batch = new ArrayList<>(batchSize);
+        int malformed = 0;
+        boolean firstLine = true;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (firstLine) {
+                firstLine = false;
+                if (line.trim().equalsIgnoreCase(WeightCsvExporter.HEADER)) {
+                    continue;
+                }
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            WeightEntry entry = parseLine(userId, line);
+            if (entry == null) {
+                malformed++;
+                continue;
+            }
+
+            batch.add(entry);
+            if (batch.size() == batchSize) {
+                result = result.plus(dbManager.addWeightEntries(batch));
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            result = result.plus(dbManager.addWeightEntries(batch));
+        }
+
+        if (malformed > 0) {
+            Log.w(TAG, "Skipped " + malformed + " malformed CSV rows for user ID: " + userId);
+        }
+        return result.plus(new BulkInsertResult(0, malformed));
+    }
+
+    /**
+     * Parses one "date,weight" line.
+     *
+     * @return The parsed entry, or null if the line is malformed.
+     */
+    private static WeightEntry parseLine(long userId, String line) {
+        int comma = line.indexOf(',');
+        if (comma <= 0) {
+            return null;
+        }
+        try {
+            String date = line.substring(0, comma).trim();
+            double weight = Double.parseDouble(line.substring(comma + 1).trim());
+            return new WeightEntry(userId, date, weight);
+        } catch (IllegalArgumentException e) {
+            // Covers both NumberFormatException and an invalid date
+            return null;
+        }
+    }
+}
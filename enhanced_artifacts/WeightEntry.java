@@ -54,6 +54,36 @@ public class WeightEntry implements Comparable<WeightEntry> {
         this.weight = weight;
     }
 
+    /**
+     * Constructor with ID and an already parsed date (used when reading epoch days from the database).
+     *
+     * @param id     The entry ID.
+     * @param userId The user's ID.
+     * @param date   The date of the entry.
+     * @param weight The weight value.
+     */
+    public WeightEntry(long id, long userId, LocalDate date, double weight) {
+        this.id = id;
+        this.userId = userId;
+        this.date = date;
+        this.weight = weight;
+    }
+
+    /**
+     * Converts a date String into the epoch day stored in the database.
+     *
+     * @param dateStr The date String in "yyyy-MM-dd" format.
+     * @return The number of days since 1970-01-01.
+     * @throws IllegalArgumentException if date parsing fails.
+     */
+    public static long toEpochDay(String dateStr) {
+        try {
+            return LocalDate.parse(dateStr, DATE_FORMATTER).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format. Expected yyyy-MM-dd.", e);
+        }
+    }
+
     /**
      * Parses a date String into a LocalDate object.
      *
@@ -93,6 +123,10 @@ public class WeightEntry implements Comparable<WeightEntry> {
         this.date = parseDate(dateStr);
     }
 
+    public long getEpochDay() {
+        return date.toEpochDay();
+    }
+
     public double getWeight() {
         return weight;
     }
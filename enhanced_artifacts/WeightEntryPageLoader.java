@@ -0,0 +1,207 @@
+/**
+ * Christopher Carnell
+ *
+ * This class loads a user's weight history one page at a time as the RecyclerView scrolls.
+ * It keeps the last loaded entry as a keyset anchor, so every page costs the same no matter how
+ * far down the history the user has scrolled or how many entries the user has in total.
+ * Pages come from WeightEntryRepository, which answers from its cache when it can and otherwise queries
+ * on a background thread; either way they are appended to the list on the main thread.
+ * Reloads re-query the loaded range and diff it against the current list on a background thread,
+ * so the adapter only receives the rows that actually changed.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.app.Activity;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Loads weight entries in pages and prefetches the next page before the user reaches the end of the list.
+ */
+public class WeightEntryPageLoader {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_PREFETCH_DISTANCE = 15;
+
+    /**
+     * Notified on the main thread after the list has changed.
+     */
+    public interface Listener {
+        void onPageLoaded(int positionStart, int itemCount);
+
+        void onReloaded(DiffUtil.DiffResult diff);
+    }
+
+    private final Activity owner;
+    private final AsyncDatabaseManager dbManager;
+    private final WeightEntryRepository repository;
+    private final long userId;
+    private final WeightEntrySeries weightEntries;
+    private final Listener listener;
+    private final int pageSize;
+    private final int prefetchDistance;
+
+    private boolean loading;
+    private boolean endReached;
+    // Incremented whenever a reload starts so pages requested before it are discarded
+    private int generation;
+
+    public WeightEntryPageLoader(Activity owner, AsyncDatabaseManager dbManager, WeightEntryRepository repository,
+                                 long userId, WeightEntrySeries weightEntries, Listener listener) {
+        this(owner, dbManager, repository, userId, weightEntries, listener, DEFAULT_PAGE_SIZE, DEFAULT_PREFETCH_DISTANCE);
+    }
+
+    public WeightEntryPageLoader(Activity owner, AsyncDatabaseManager dbManager, WeightEntryRepository repository, long userId,
+                                 WeightEntrySeries weightEntries, Listener listener,
+                                 int pageSize, int prefetchDistance) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.owner = owner;
+        this.dbManager = dbManager;
+        this.repository = repository;
+        this.userId = userId;
+        this.weightEntries = weightEntries;
+        this.listener = listener;
+        this.pageSize = pageSize;
+        this.prefetchDistance = prefetchDistance;
+    }
+
+    /**
+     * Requests the next page. Does nothing if a load is already running or the end was reached.
+     * Must be called on the main thread.
+     */
+    public void loadNextPage() {
+        if (loading || endReached) {
+            return;
+        }
+        loading = true;
+        int requestGeneration = generation;
+
+        // The last loaded entry is the keyset anchor for the next page
+        WeightEntry anchor = weightEntries.last();
+
+        dbManager.deliver(owner, repository.getWeightEntriesPage(userId, anchor, pageSize),
+                new AsyncDatabaseManager.Callback<WeightEntrySeries>() {
+                    @Override
+                    public void onResult(WeightEntrySeries page) {
+                        if (requestGeneration != generation) {
+                            return;
+                        }
+                        loading = false;
+                        if (page.size() < pageSize) {
+                            endReached = true;
+                        }
+                        int positionStart = weightEntries.size();
+                        weightEntries.appendAll(page);
+                        if (!page.isEmpty()) {
+                            listener.onPageLoaded(positionStart, page.size());
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        AsyncDatabaseManager.Callback.super.onError(error);
+                        if (requestGeneration == generation) {
+                            loading = false;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Re-queries everything loaded so far (at least one page) and applies only the differences.
+     * The query (unless the repository has the range cached) and the diff both run on background threads. Any page still in flight is discarded.
+     * Must be called on the main thread.
+     */
+    public void reload() {
+        generation++;
+        loading = true;
+        int requestGeneration = generation;
+        int requestSize = Math.max(weightEntries.size(), pageSize);
+
+        WeightEntrySeries oldEntries = weightEntries.copy();
+        int snapshotModificationCount = weightEntries.getModificationCount();
+
+        dbManager.deliver(owner, repository.getWeightEntriesPage(userId, null, requestSize)
+                        .thenApplyAsync(newEntries -> new ReloadResult(newEntries, DataAdapter.calculateDiff(oldEntries, newEntries)),
+                                DatabaseExecutors.getInstance().readers()),
+                new AsyncDatabaseManager.Callback<ReloadResult>() {
+                    @Override
+                    public void onResult(ReloadResult result) {
+                        if (requestGeneration != generation) {
+                            return;
+                        }
+                        if (weightEntries.getModificationCount() != snapshotModificationCount) {
+                            // The list changed while diffing, so the diff no longer applies; start over
+                            reload();
+                            return;
+                        }
+                        loading = false;
+                        endReached = result.entries.size() < requestSize;
+                        weightEntries.replaceAll(result.entries);
+                        listener.onReloaded(result.diff);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        AsyncDatabaseManager.Callback.super.onError(error);
+                        if (requestGeneration == generation) {
+                            loading = false;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @return True if there may be older entries that have not been loaded yet.
+     */
+    public boolean hasMore() {
+        return !endReached;
+    }
+
+    /**
+     * Creates a scroll listener that requests the next page once the last visible item
+     * is within the prefetch distance of the end of the list.
+     *
+     * @return The scroll listener to attach to the RecyclerView.
+     */
+    public RecyclerView.OnScrollListener createScrollListener() {
+        return new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0 || loading || endReached) {
+                    return;
+                }
+
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager == null) {
+                    return;
+                }
+
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible + prefetchDistance >= weightEntries.size()) {
+                    // The page arrives in a later main-thread message, outside the scroll callback
+                    loadNextPage();
+                }
+            }
+        };
+    }
+
+    /**
+     * A reloaded range together with its diff against the list it replaces.
+     */
+    private static class ReloadResult {
+        final WeightEntrySeries entries;
+        final DiffUtil.DiffResult diff;
+
+        ReloadResult(WeightEntrySeries entries, DiffUtil.DiffResult diff) {
+            this.entries = entries;
+            this.diff = diff;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Christopher Carnell
+ *
+ * This class holds the date-bounded entry queries shared by DatabaseManager and WeightStatsEngine.
+ * Every query is answered from the covering (user_id, date DESC, weight) index: the user and date bounds
+ * seek straight to the first matching index row and LIMIT stops the scan, so the cost depends on the number
+ * of rows returned, not on the length of the history. "Latest entry on or before a date" is a single
+ * O(log n) index seek.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Index-bounded range queries over the entries table. Results are newest first, matching the history list.
+ */
+public final class WeightEntryQueries {
+
+    private static final String[] COLUMNS = {
+            DatabaseHelper.COLUMN_ID,
+            DatabaseHelper.COLUMN_DATE,
+            DatabaseHelper.COLUMN_WEIGHT
+    };
+    private static final String ORDER_BY = DatabaseHelper.COLUMN_DATE + " DESC, " + DatabaseHelper.COLUMN_ID + " DESC";
+
+    private WeightEntryQueries() {
+    }
+
+    /**
+     * @param db           The database.
+     * @param userId       The user's ID.
+     * @param fromEpochDay The first day of the range (inclusive).
+     * @param toEpochDay   The last day of the range (inclusive).
+     * @return The user's entries in the range, newest first.
+     */
+    public static WeightEntrySeries between(SQLiteDatabase db, long userId, long fromEpochDay, long toEpochDay) {
+        String selection = DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ?";
+        String[] selectionArgs = {String.valueOf(userId), String.valueOf(fromEpochDay), String.valueOf(toEpochDay)};
+        return query(db, userId, selection, selectionArgs, null, 0);
+    }
+
+    /**
+     * @param db     The database.
+     * @param userId The user's ID.
+     * @param count  The maximum number of entries to return.
+     * @return The user's newest entries, newest first.
+     */
+    public static WeightEntrySeries latest(SQLiteDatabase db, long userId, int count) {
+        String selection = DatabaseHelper.COLUMN_USER_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(userId)};
+        return query(db, userId, selection, selectionArgs, String.valueOf(count), count);
+    }
+
+    /**
+     * @param db       The database.
+     * @param userId   The user's ID.
+     * @param epochDay The last day to consider (inclusive).
+     * @return The user's newest entry dated on or before the day, or null if there is none.
+     */
+    public static WeightEntry latestOnOrBefore(SQLiteDatabase db, long userId, long epochDay) {
+        String selection = DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_DATE + " <= ?";
+        String[] selectionArgs = {String.valueOf(userId), String.valueOf(epochDay)};
+        return query(db, userId, selection, selectionArgs, "1", 1).last();
+    }
+
+    /**
+     * @return The user's newest entry, or null if the user has no entries.
+     */
+    public static WeightEntry latest(SQLiteDatabase db, long userId) {
+        return latest(db, userId, 1).last();
+    }
+
+    private static WeightEntrySeries query(SQLiteDatabase db, long userId, String selection, String[] selectionArgs,
+                                           String limit, int capacity) {
+        WeightEntrySeries entries = new WeightEntrySeries(userId, capacity);
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_ENTRIES, COLUMNS, selection, selectionArgs, null, null, ORDER_BY, limit)) {
+            new WeightEntryRowMapper(userId).readInto(cursor, entries);
+        }
+        return entries;
+    }
+}
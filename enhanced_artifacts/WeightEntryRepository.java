@@ -0,0 +1,332 @@
+/**
+ * Christopher Carnell
+ *
+ * This class sits between the activities and the database for weight entries.
+ * It keeps a process-wide, size-bounded LRU cache of the newest entries of recently viewed users, so
+ * re-entering the history screen (after a rotation or coming back from another screen) is served from
+ * memory without a database query. Pages beyond what is cached are read from the database and added to it.
+ * The cache is written through at commit time: it listens to DataChangeBus on the publishing thread and
+ * applies each inserted or deleted entry before any screen hears about it; bulk changes drop the user's
+ * entry instead. It shrinks or empties itself when the system reports memory pressure.
+ * Entries waiting out a PendingDeleteQueue undo window are hidden from every page it returns, whether the
+ * page comes from the cache or the database, until the delete commits or is undone. The hidden set lives
+ * here rather than in the activity so it survives configuration changes; it does not survive process death,
+ * in which case the uncommitted deletes are simply dropped.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read-through, write-through cache of users' WeightEntrySeries in front of AsyncDatabaseManager.
+ */
+public final class WeightEntryRepository {
+
+    // Bound on the total number of cached entries across all users (about 20 bytes each)
+    private static final int MAX_CACHED_ENTRIES = 20_000;
+
+    private static volatile WeightEntryRepository instance;
+
+    private final AsyncDatabaseManager dbManager;
+    private final Metrics metrics;
+    private final LruCache<Long, CachedSeries> cache;
+
+    // Bumped on every committed change so a page read that started before it is not cached
+    private long generation;
+
+    // Entries with an uncommitted delete, per user; left out of every page
+    private final Map<Long, WeightEntrySeries> hiddenByUser = new HashMap<>();
+
+    private WeightEntryRepository(Context context) {
+        dbManager = new AsyncDatabaseManager(context);
+        dbManager.open();
+        metrics = Metrics.getInstance();
+
+        cache = new LruCache<Long, CachedSeries>(MAX_CACHED_ENTRIES) {
+            @Override
+            protected int sizeOf(Long userId, CachedSeries cached) {
+                return cached.cost;
+            }
+        };
+        metrics.gauge("entryCache.size", this::cachedEntryCount);
+        metrics.gauge("entryCache.users", () -> cache.snapshot().size());
+
+        DataChangeBus.getInstance().addCommitListener(this::onCommitted);
+
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    /**
+     * Returns the shared repository, creating it on first use.
+     * The application context is used so no activity is leaked.
+     *
+     * @param context Any context.
+     * @return The shared WeightEntryRepository.
+     */
+    public static WeightEntryRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (WeightEntryRepository.class) {
+                if (instance == null) {
+                    instance = new WeightEntryRepository(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns one page of a user's entries, newest first, from the cache when it covers the page
+     * and from the database otherwise. Hidden entries are left out; enough extra rows are read to
+     * still fill the page.
+     *
+     * @param userId   The user's ID.
+     * @param anchor   The last entry of the previous page, or null for the first page.
+     * @param pageSize The maximum number of entries to return.
+     * @return The page; already completed on a cache hit.
+     */
+    public CompletableFuture<WeightEntrySeries> getWeightEntriesPage(long userId, WeightEntry anchor, int pageSize) {
+        long requestGeneration;
+        int fetchSize;
+        synchronized (this) {
+            WeightEntrySeries hidden = hiddenByUser.get(userId);
+            fetchSize = pageSize + (hidden == null ? 0 : hidden.size());
+            CachedSeries cached = cache.get(userId);
+            if (cached != null) {
+                WeightEntrySeries series = cached.series;
+                int start = anchor == null ? 0 : series.indexOf(anchor.getEpochDay(), anchor.getId()) + 1;
+                // A start of 0 with an anchor means the anchor is not cached, so the page is not either
+                boolean anchorFound = anchor == null || start > 0;
+                if (anchorFound && (cached.complete || start + fetchSize <= series.size())) {
+                    metrics.counter("entryCache.hits").increment();
+                    return CompletableFuture.completedFuture(
+                            withoutHidden(series.copyRange(start, Math.min(start + fetchSize, series.size())), pageSize));
+                }
+            }
+            requestGeneration = generation;
+        }
+
+        metrics.counter("entryCache.misses").increment();
+        return dbManager.getWeightEntriesPage(userId, anchor, fetchSize).thenApply(page -> {
+            cachePage(userId, anchor, fetchSize, page, requestGeneration);
+            return withoutHidden(page, pageSize);
+        });
+    }
+
+    /**
+     * Hides entries from every page until they are shown again, e.g. while their delete can still be undone.
+     *
+     * @param userId  The user's ID.
+     * @param entries The entries to hide.
+     */
+    public synchronized void hide(long userId, WeightEntrySeries entries) {
+        WeightEntrySeries hidden = hiddenByUser.computeIfAbsent(userId, WeightEntrySeries::new);
+        for (int i = 0; i < entries.size(); i++) {
+            if (hidden.indexOf(entries.getEpochDay(i), entries.getId(i)) == -1) {
+                hidden.add(entries.getId(i), entries.getEpochDay(i), entries.getWeight(i));
+            }
+        }
+    }
+
+    /**
+     * Shows hidden entries again, once their delete has committed, failed or been undone.
+     *
+     * @param userId  The user's ID.
+     * @param entries The entries to show.
+     */
+    public synchronized void unhide(long userId, WeightEntrySeries entries) {
+        WeightEntrySeries hidden = hiddenByUser.get(userId);
+        if (hidden == null) {
+            return;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            hidden.remove(entries.getEpochDay(i), entries.getId(i));
+        }
+        if (hidden.isEmpty()) {
+            hiddenByUser.remove(userId);
+        }
+    }
+
+    /**
+     * @param userId The user's ID.
+     * @return A copy of the user's hidden entries; empty if there are none.
+     */
+    public synchronized WeightEntrySeries getHidden(long userId) {
+        WeightEntrySeries hidden = hiddenByUser.get(userId);
+        return hidden != null ? hidden.copy() : new WeightEntrySeries(userId);
+    }
+
+    /**
+     * Removes the user's hidden entries from a series, e.g. one read from a snapshot.
+     *
+     * @param series The entries, modified in place.
+     * @return The same series.
+     */
+    public synchronized WeightEntrySeries removeHidden(WeightEntrySeries series) {
+        WeightEntrySeries hidden = hiddenByUser.get(series.getUserId());
+        if (hidden != null) {
+            for (int i = 0; i < hidden.size(); i++) {
+                series.remove(hidden.getEpochDay(i), hidden.getId(i));
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Adds a weight entry. The cache is updated when the insert commits.
+     */
+    public CompletableFuture<Long> addWeightEntry(long userId, String date, double weight) {
+        return dbManager.addWeightEntry(userId, date, weight);
+    }
+
+    /**
+     * Deletes a weight entry. The cache is updated when the delete commits.
+     */
+    public CompletableFuture<Integer> deleteWeightEntry(long entryId) {
+        return dbManager.deleteWeightEntry(entryId);
+    }
+
+    /**
+     * Deletes many weight entries in one transaction. The cache is updated when the delete commits.
+     */
+    public CompletableFuture<Integer> deleteWeightEntries(long[] entryIds) {
+        return dbManager.deleteWeightEntries(entryIds);
+    }
+
+    /**
+     * Drops every cached series.
+     */
+    public synchronized void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * @return The page without the user's hidden entries, cut to at most pageSize entries.
+     */
+    private synchronized WeightEntrySeries withoutHidden(WeightEntrySeries page, int pageSize) {
+        removeHidden(page);
+        return page.size() > pageSize ? page.copyHead(pageSize) : page;
+    }
+
+    /**
+     * Adds a page read from the database to the cache, if it extends what is cached and no change has
+     * been committed since the read started. Runs on the reader thread that completed the query.
+     */
+    private synchronized void cachePage(long userId, WeightEntry anchor, int pageSize, WeightEntrySeries page, long requestGeneration) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        boolean complete = page.size() < pageSize;
+        if (anchor == null) {
+            cache.put(userId, new CachedSeries(page.copy(), complete));
+            return;
+        }
+
+        CachedSeries cached = cache.get(userId);
+        if (cached == null || cached.complete) {
+            return;
+        }
+        WeightEntry last = cached.series.last();
+        if (last != null && last.getId() == anchor.getId() && last.getEpochDay() == anchor.getEpochDay()) {
+            cached.series.appendAll(page);
+            // Re-put so the cache accounts for the new size
+            cache.put(userId, new CachedSeries(cached.series, complete));
+        }
+    }
+
+    /**
+     * Applies a committed change to the cache. Called on the publishing thread, right after commit.
+     */
+    private synchronized void onCommitted(DataChangeEvent event) {
+        DataChangeEvent.Type type = event.getType();
+        if (type != DataChangeEvent.Type.ENTRY_INSERTED && type != DataChangeEvent.Type.ENTRY_DELETED
+                && type != DataChangeEvent.Type.ENTRIES_CHANGED) {
+            return;
+        }
+        generation++;
+
+        long userId = event.getUserId();
+        CachedSeries cached = cache.get(userId);
+        if (cached == null) {
+            return;
+        }
+        WeightEntrySeries series = cached.series;
+
+        switch (type) {
+            case ENTRY_INSERTED: {
+                long entryId = event.getEntryId();
+                long epochDay = event.getEpochDay();
+                // Entries older than the cached range are left for the database to return
+                if (series.indexOf(epochDay, entryId) == -1
+                        && (series.insertionPoint(epochDay, entryId) < series.size() || cached.complete)) {
+                    series.add(entryId, epochDay, event.getWeight());
+                    cache.put(userId, new CachedSeries(series, cached.complete));
+                }
+                break;
+            }
+            case ENTRY_DELETED:
+                if (series.remove(event.getEpochDay(), event.getEntryId()) != -1) {
+                    cache.put(userId, new CachedSeries(series, cached.complete));
+                }
+                break;
+            default:
+                // Bulk changes carry no per-entry details
+                cache.remove(userId);
+                break;
+        }
+    }
+
+    /**
+     * Shrinks the cache as the system runs low on memory.
+     */
+    private synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+        metrics.counter("entryCache.trims").increment();
+    }
+
+    private synchronized int cachedEntryCount() {
+        return cache.size();
+    }
+
+    /**
+     * A cached series with the size it was cached at. The series itself is only mutated under the
+     * repository's lock and is re-put after every change, so the LRU cache's size accounting stays consistent.
+     */
+    private static final class CachedSeries {
+        final WeightEntrySeries series;
+        // True if the series holds the user's whole history
+        final boolean complete;
+        final int cost;
+
+        CachedSeries(WeightEntrySeries series, boolean complete) {
+            this.series = series;
+            this.complete = complete;
+            this.cost = Math.max(series.size(), 1);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Christopher Carnell
+ *
+ * This class maps rows of the entries table to WeightEntry objects, or appends them straight into
+ * a WeightEntrySeries without creating any objects at all.
+ * The user_id column is optional, since queries that are already filtered by user do not need to select it.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.database.Cursor;
+
+import java.time.LocalDate;
+
+/**
+ * Maps (_id, [user_id,] date, weight) rows of the entries table.
+ */
+public class WeightEntryRowMapper implements RowMapper<WeightEntry> {
+
+    // Used when the cursor has no user_id column
+    private final long userId;
+
+    private int idIndex;
+    private int userIdIndex;
+    private int dateIndex;
+    private int weightIndex;
+
+    /**
+     * Creates a mapper for cursors that select the user_id column.
+     */
+    public WeightEntryRowMapper() {
+        this(0);
+    }
+
+    /**
+     * @param userId The user ID to give entries when the cursor does not select the user_id column.
+     */
+    public WeightEntryRowMapper(long userId) {
+        this.userId = userId;
+    }
+
+    @Override
+    public void bind(Cursor cursor) {
+        idIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID);
+        userIdIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_USER_ID);
+        dateIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DATE);
+        weightIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_WEIGHT);
+    }
+
+    @Override
+    public WeightEntry map(Cursor cursor) {
+        return new WeightEntry(
+                cursor.getLong(idIndex),
+                userIdIndex == -1 ? userId : cursor.getLong(userIdIndex),
+                LocalDate.ofEpochDay(cursor.getLong(dateIndex)),
+                cursor.getDouble(weightIndex)
+        );
+    }
+
+    /**
+     * Appends every remaining row of a cursor to a series. No objects are created per row.
+     *
+     * @param cursor The cursor to read, already in the series' sort order. May be null.
+     * @param series The series to append to.
+     */
+    public void readInto(Cursor cursor, WeightEntrySeries series) {
+        if (cursor == null) {
+            return;
+        }
+        bind(cursor);
+        while (cursor.moveToNext()) {
+            series.append(cursor.getLong(idIndex), cursor.getLong(dateIndex), cursor.getDouble(weightIndex));
+        }
+    }
+}
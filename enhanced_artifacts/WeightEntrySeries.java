@@ -0,0 +1,318 @@
+/**
+ * Christopher Carnell
+ *
+ * This class holds one user's weight entries in a compact, column-oriented form.
+ * Instead of one WeightEntry object per row, it keeps three parallel primitive arrays
+ * (epoch days, weights and entry IDs), so each entry costs 20 bytes and ten years of daily data fits in about 75 KB.
+ * The entries are kept in the same order the database returns them (newest date first, then newest ID first),
+ * so inserts, deletes and range lookups use binary search and nothing ever needs to be re-sorted.
+ */
+
+package com.cs360.weightwatcher;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A growable, sorted series of weight entries for one user, stored as parallel primitive arrays.
+ */
+public class WeightEntrySeries {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final long userId;
+    private int[] epochDays;
+    private double[] weights;
+    private long[] ids;
+    private int size;
+
+    // Incremented on every change so background work can tell whether its snapshot is still current
+    private int modificationCount;
+
+    public WeightEntrySeries(long userId) {
+        this(userId, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param userId   The user the entries belong to.
+     * @param capacity The number of entries to reserve room for, e.g. the row count of a Cursor.
+     */
+    public WeightEntrySeries(long userId, int capacity) {
+        this.userId = userId;
+        int initialCapacity = Math.max(capacity, 1);
+        epochDays = new int[initialCapacity];
+        weights = new double[initialCapacity];
+        ids = new long[initialCapacity];
+    }
+
+    public long getUserId() { return userId; }
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int getModificationCount() { return modificationCount; }
+
+    public int getEpochDay(int position) {
+        checkPosition(position);
+        return epochDays[position];
+    }
+
+    public double getWeight(int position) {
+        checkPosition(position);
+        return weights[position];
+    }
+
+    public long getId(int position) {
+        checkPosition(position);
+        return ids[position];
+    }
+
+    /**
+     * Creates a WeightEntry for one position, for callers that still need an object.
+     *
+     * @param position The position of the entry.
+     * @return A new WeightEntry with the same values.
+     */
+    public WeightEntry getEntry(int position) {
+        checkPosition(position);
+        return new WeightEntry(ids[position], userId, LocalDate.ofEpochDay(epochDays[position]), weights[position]);
+    }
+
+    /**
+     * Formats the date at a position as "yyyy-MM-dd" for display.
+     *
+     * @param position The position of the entry.
+     * @return The formatted date.
+     */
+    public String formatDate(int position) {
+        // LocalDate.toString() is ISO-8601, the same format as WeightEntry.getDate(), without a DateTimeFormatter
+        return LocalDate.ofEpochDay(getEpochDay(position)).toString();
+    }
+
+    /**
+     * @return The oldest loaded entry, or null if the series is empty.
+     */
+    public WeightEntry last() {
+        return size == 0 ? null : getEntry(size - 1);
+    }
+
+    /**
+     * Appends an entry that is older than the current last entry, e.g. the next row of a Cursor.
+     * The caller is responsible for the ordering.
+     *
+     * @param id       The entry ID.
+     * @param epochDay The date of the entry as an epoch day.
+     * @param weight   The weight value.
+     */
+    public void append(long id, long epochDay, double weight) {
+        ensureCapacity(size + 1);
+        epochDays[size] = Math.toIntExact(epochDay);
+        weights[size] = weight;
+        ids[size] = id;
+        size++;
+        modificationCount++;
+    }
+
+    /**
+     * Appends a page of entries that are all older than the current last entry.
+     *
+     * @param page The entries to append, already in sorted order.
+     */
+    public void appendAll(WeightEntrySeries page) {
+        ensureCapacity(size + page.size);
+        System.arraycopy(page.epochDays, 0, epochDays, size, page.size);
+        System.arraycopy(page.weights, 0, weights, size, page.size);
+        System.arraycopy(page.ids, 0, ids, size, page.size);
+        size += page.size;
+        modificationCount++;
+    }
+
+    /**
+     * Replaces the whole series, e.g. after a reload.
+     *
+     * @param other The new entries, already in sorted order.
+     */
+    public void replaceAll(WeightEntrySeries other) {
+        size = 0;
+        appendAll(other);
+    }
+
+    /**
+     * Finds where an entry belongs in the sorted order.
+     *
+     * @param epochDay The date of the entry as an epoch day.
+     * @param id       The entry ID.
+     * @return The index at which the entry should be inserted.
+     */
+    public int insertionPoint(long epochDay, long id) {
+        int index = search(epochDay, id);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * Inserts an entry at its sorted position.
+     *
+     * @param id       The entry ID.
+     * @param epochDay The date of the entry as an epoch day.
+     * @param weight   The weight value.
+     * @return The position the entry was inserted at.
+     */
+    public int add(long id, long epochDay, double weight) {
+        int position = insertionPoint(epochDay, id);
+        ensureCapacity(size + 1);
+        int moved = size - position;
+        System.arraycopy(epochDays, position, epochDays, position + 1, moved);
+        System.arraycopy(weights, position, weights, position + 1, moved);
+        System.arraycopy(ids, position, ids, position + 1, moved);
+        epochDays[position] = Math.toIntExact(epochDay);
+        weights[position] = weight;
+        ids[position] = id;
+        size++;
+        modificationCount++;
+        return position;
+    }
+
+    /**
+     * Finds an entry by its date and ID.
+     *
+     * @param epochDay The date of the entry as an epoch day.
+     * @param id       The entry ID.
+     * @return The entry's position, or -1 if it is not in the series.
+     */
+    public int indexOf(long epochDay, long id) {
+        int index = search(epochDay, id);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param epochDay The date of the entry as an epoch day.
+     * @param id       The entry ID.
+     * @return The position the entry was removed from, or -1 if it was not in the series.
+     */
+    public int remove(long epochDay, long id) {
+        int position = indexOf(epochDay, id);
+        if (position != -1) {
+            int moved = size - position - 1;
+            System.arraycopy(epochDays, position + 1, epochDays, position, moved);
+            System.arraycopy(weights, position + 1, weights, position, moved);
+            System.arraycopy(ids, position + 1, ids, position, moved);
+            size--;
+            modificationCount++;
+        }
+        return position;
+    }
+
+    /**
+     * Returns a view of the entries dated within a range, without copying them.
+     * The view reads through to this series, so it is only valid until the series is next changed.
+     *
+     * @param fromEpochDay The first day of the range (inclusive).
+     * @param toEpochDay   The last day of the range (inclusive).
+     * @return The entries in the range, newest first.
+     */
+    public Range range(long fromEpochDay, long toEpochDay) {
+        // Newest first, so the newest day in the range comes first. Long.MAX_VALUE sorts before every
+        // real ID with the same date, and Long.MIN_VALUE after every one.
+        int start = insertionPoint(toEpochDay, Long.MAX_VALUE);
+        int end = insertionPoint(fromEpochDay, Long.MIN_VALUE);
+        return new Range(start, Math.max(start, end));
+    }
+
+    /**
+     * @return A copy of the current entries that is safe to read on a background thread.
+     */
+    public WeightEntrySeries copy() {
+        WeightEntrySeries copy = new WeightEntrySeries(userId, size);
+        copy.appendAll(this);
+        return copy;
+    }
+
+    /**
+     * @param count The maximum number of entries to copy.
+     * @return A copy of the first count entries (the newest ones) that is safe to read on a background thread.
+     */
+    public WeightEntrySeries copyHead(int count) {
+        return copyRange(0, Math.min(count, size));
+    }
+
+    /**
+     * @param fromPosition The first position to copy.
+     * @param toPosition   The position after the last one to copy.
+     * @return A copy of the entries in the range that is safe to read on a background thread.
+     */
+    public WeightEntrySeries copyRange(int fromPosition, int toPosition) {
+        int length = toPosition - fromPosition;
+        WeightEntrySeries copy = new WeightEntrySeries(userId, length);
+        System.arraycopy(epochDays, fromPosition, copy.epochDays, 0, length);
+        System.arraycopy(weights, fromPosition, copy.weights, 0, length);
+        System.arraycopy(ids, fromPosition, copy.ids, 0, length);
+        copy.size = length;
+        return copy;
+    }
+
+    /**
+     * Binary search in (date DESC, id DESC) order, matching "ORDER BY date DESC, _id DESC" in DatabaseManager.
+     *
+     * @return The index of the entry, or (-(insertion point) - 1) if it is not present.
+     */
+    private int search(long epochDay, long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int byDate = Long.compare(epochDay, epochDays[mid]);
+            int cmp = byDate != 0 ? byDate : Long.compare(id, ids[mid]);
+            if (cmp > 0) {
+                // Newer than mid, so it belongs before it
+                high = mid - 1;
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, ids.length + (ids.length >> 1));
+        epochDays = Arrays.copyOf(epochDays, newCapacity);
+        weights = Arrays.copyOf(weights, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+    }
+
+    /**
+     * A contiguous slice of the series. Positions are relative to the start of the slice.
+     */
+    public class Range {
+        private final int start;
+        private final int end;
+
+        private Range(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int size() { return end - start; }
+        public boolean isEmpty() { return end == start; }
+        public int getEpochDay(int position) { return WeightEntrySeries.this.getEpochDay(offset(position)); }
+        public double getWeight(int position) { return WeightEntrySeries.this.getWeight(offset(position)); }
+        public long getId(int position) { return WeightEntrySeries.this.getId(offset(position)); }
+
+        private int offset(int position) {
+            if (position < 0 || position >= size()) {
+                throw new IndexOutOfBoundsException("Position " + position + ", size " + size());
+            }
+            return start + position;
+        }
+    }
+}
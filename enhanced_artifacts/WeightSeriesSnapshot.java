@@ -0,0 +1,281 @@
+/**
+ * Christopher Carnell
+ *
+ * This class reads and writes a compact binary snapshot of the newest entries of a user's history.
+ * The snapshot lives next to WeightWatcher.db and is read through a memory-mapped FileChannel, so
+ * DataDisplayActivity can show the list on its first frame, before SQLite is even opened; the database
+ * is then reconciled in the background and only the rows that differ are updated.
+ *
+ * Layout (big-endian):
+ *   header  magic "WWS1" (int), format version (short), flags (short), user ID (long),
+ *           entry count (int), payload length (int), CRC32 of the payload (int)
+ *   payload one record per entry, in display order (date DESC, ID DESC):
+ *           zigzag varint delta of the epoch day, zigzag varint delta of the entry ID,
+ *           and either a zigzag varint delta of the weight in hundredths or, with FLAG_RAW_WEIGHTS,
+ *           the weight as an 8-byte double
+ * Consecutive entries are usually a day and one ID apart with similar weights, so most records take 3-4 bytes.
+ * Single inserts and deletes are written back by the history screen; bulk imports and deletes cannot be
+ * patched in, so DatabaseManager deletes the user's snapshot when they commit and advances the user's
+ * generation. A write is dropped unless the list it was copied from was loaded at the current generation,
+ * so a copy taken before a bulk change cannot bring the deleted snapshot back.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the head of a user's WeightEntrySeries.
+ */
+public final class WeightSeriesSnapshot {
+
+    private static final String TAG = "WeightSeriesSnapshot";
+
+    private static final int MAGIC = 0x57575331; // "WWS1"
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 8 + 4 + 4 + 4;
+
+    // Set when some weight has more than two decimals, so the weights are stored as raw doubles
+    private static final short FLAG_RAW_WEIGHTS = 1;
+    private static final double WEIGHT_SCALE = 100;
+
+    // Enough rows to fill the first screens; older rows are paged in from the database as usual
+    public static final int MAX_ENTRIES = 200;
+
+    // Worst case per record: two 10-byte varints and a 10-byte varint or an 8-byte double
+    private static final int MAX_RECORD_SIZE = 30;
+
+    // Per-user count of bulk changes in this process; a snapshot copied from a list loaded before the latest one is stale
+    private static final Map<Long, Long> GENERATIONS = new ConcurrentHashMap<>();
+
+    private WeightSeriesSnapshot() {
+    }
+
+    /**
+     * @param context Any context.
+     * @param userId  The user's ID.
+     * @return The user's snapshot file, in the same directory as the database.
+     */
+    public static File fileFor(Context context, long userId) {
+        File databaseFile = context.getDatabasePath(DatabaseHelper.DATABASE_NAME);
+        return new File(databaseFile.getParentFile(), "series_" + userId + ".snapshot");
+    }
+
+    /**
+     * @param userId The user's ID.
+     * @return The user's current generation. Take it before loading the list a snapshot will be copied from.
+     */
+    public static long generation(long userId) {
+        return GENERATIONS.getOrDefault(userId, 0L);
+    }
+
+    /**
+     * Marks every list loaded so far as older than a bulk change. Call on the writer thread once the change
+     * has been published, so a list loaded at the new generation includes it.
+     *
+     * @param userId The user's ID.
+     */
+    public static void advanceGeneration(long userId) {
+        GENERATIONS.merge(userId, 1L, Long::sum);
+    }
+
+    /**
+     * Writes a snapshot unless a bulk change has committed since the list it was copied from was loaded.
+     * Call on the writer thread: bulk changes advance the generation there too, so the check and the write
+     * cannot be split by one.
+     *
+     * @param file       The snapshot file.
+     * @param series     The entries to store, in display order.
+     * @param generation The generation the list was loaded at, from generation().
+     * @return True if the snapshot was written.
+     */
+    public static boolean write(File file, WeightEntrySeries series, long generation) {
+        if (generation != generation(series.getUserId())) {
+            return false;
+        }
+        return write(file, series);
+    }
+
+    /**
+     * Writes the first MAX_ENTRIES entries of a series. The file is written to a temporary file first
+     * and then renamed, so a reader never sees a half-written snapshot.
+     *
+     * @param file   The snapshot file.
+     * @param series The entries to store, in display order.
+     * @return True if the snapshot was written.
+     */
+    public static boolean write(File file, WeightEntrySeries series) {
+        int count = Math.min(series.size(), MAX_ENTRIES);
+        short flags = 0;
+        for (int i = 0; i < count; i++) {
+            if (!isExactHundredths(series.getWeight(i))) {
+                flags |= FLAG_RAW_WEIGHTS;
+                break;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * MAX_RECORD_SIZE);
+        buffer.position(HEADER_SIZE);
+        long previousDay = 0;
+        long previousId = 0;
+        long previousHundredths = 0;
+        for (int i = 0; i < count; i++) {
+            long day = series.getEpochDay(i);
+            long id = series.getId(i);
+            putVarLong(buffer, zigzag(day - previousDay));
+            putVarLong(buffer, zigzag(id - previousId));
+            previousDay = day;
+            previousId = id;
+            if ((flags & FLAG_RAW_WEIGHTS) != 0) {
+                buffer.putDouble(series.getWeight(i));
+            } else {
+                long hundredths = Math.round(series.getWeight(i) * WEIGHT_SCALE);
+                putVarLong(buffer, zigzag(hundredths - previousHundredths));
+                previousHundredths = hundredths;
+            }
+        }
+        int payloadLength = buffer.position() - HEADER_SIZE;
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, payloadLength);
+
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, FORMAT_VERSION);
+        buffer.putShort(6, flags);
+        buffer.putLong(8, series.getUserId());
+        buffer.putInt(16, count);
+        buffer.putInt(20, payloadLength);
+        buffer.putInt(24, (int) crc.getValue());
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            output.write(buffer.array(), 0, HEADER_SIZE + payloadLength);
+        } catch (IOException e) {
+            Log.e(TAG, "Unexpected error occurred in write snapshot.", e);
+            return false;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Could not replace snapshot " + file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a snapshot through a memory-mapped buffer.
+     *
+     * @param file   The snapshot file.
+     * @param userId The user the snapshot must belong to.
+     * @return The stored entries, or null if there is no snapshot or it is corrupt, outdated or another user's.
+     */
+    public static WeightEntrySeries read(File file, long userId) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > HEADER_SIZE + (long) MAX_ENTRIES * MAX_RECORD_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != FORMAT_VERSION || buffer.getLong(8) != userId) {
+                return null;
+            }
+            short flags = buffer.getShort(6);
+            int count = buffer.getInt(16);
+            int payloadLength = buffer.getInt(20);
+            if (count < 0 || count > MAX_ENTRIES || payloadLength != fileSize - HEADER_SIZE) {
+                return null;
+            }
+
+            buffer.position(HEADER_SIZE);
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(24)) {
+                Log.e(TAG, "Snapshot checksum mismatch " + file);
+                return null;
+            }
+
+            payload.rewind();
+            WeightEntrySeries series = new WeightEntrySeries(userId);
+            long day = 0;
+            long id = 0;
+            long hundredths = 0;
+            for (int i = 0; i < count; i++) {
+                day += unzigzag(getVarLong(payload));
+                id += unzigzag(getVarLong(payload));
+                double weight;
+                if ((flags & FLAG_RAW_WEIGHTS) != 0) {
+                    weight = payload.getDouble();
+                } else {
+                    hundredths += unzigzag(getVarLong(payload));
+                    weight = hundredths / WEIGHT_SCALE;
+                }
+                series.append(id, day, weight);
+            }
+            return series;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | ArithmeticException e) {
+            Log.e(TAG, "Unexpected error occurred in read snapshot.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes a user's snapshot, e.g. after a bulk change it no longer matches.
+     *
+     * @param file The snapshot file.
+     */
+    public static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "Could not delete snapshot " + file);
+        }
+    }
+
+    private static boolean isExactHundredths(double weight) {
+        return Math.round(weight * WEIGHT_SCALE) / WEIGHT_SCALE == weight;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Christopher Carnell
+ *
+ * This model class holds the summary statistics of a user's weight history.
+ * It contains the entry count and sum (for the mean), the minimum and maximum weights, the latest entry,
+ * the 7- and 30-day moving averages, the 30-day smoothed (trend) weight and the weekly rate of change.
+ * It is persisted one row per user in the user_stats table so the dashboard never rescans the history.
+ */
+
+package com.cs360.weightwatcher;
+
+public class WeightStats {
+    private final long userId;
+    private int entryCount;
+    private double weightSum;
+    private double minWeight;
+    private double maxWeight;
+    private long latestDate;
+    private double latestWeight;
+    private double average7Day;
+    private double average30Day;
+    private double trendWeight;
+    private double weeklyRate;
+
+    public WeightStats(long userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * @return The mean of all entries, or 0 if the user has no entries.
+     */
+    public double getMeanWeight() {
+        return entryCount == 0 ? 0 : weightSum / entryCount;
+    }
+
+    //getters and setters
+    public long getUserId() { return userId; }
+    public int getEntryCount() { return entryCount; }
+    public double getWeightSum() { return weightSum; }
+    public double getMinWeight() { return minWeight; }
+    public double getMaxWeight() { return maxWeight; }
+    public long getLatestDate() { return latestDate; }
+    public double getLatestWeight() { return latestWeight; }
+    public double getAverage7Day() { return average7Day; }
+    public double getAverage30Day() { return average30Day; }
+    public double getTrendWeight() { return trendWeight; }
+    public double getWeeklyRate() { return weeklyRate; }
+
+    public void setEntryCount(int entryCount) { this.entryCount = entryCount; }
+    public void setWeightSum(double weightSum) { this.weightSum = weightSum; }
+    public void setMinWeight(double minWeight) { this.minWeight = minWeight; }
+    public void setMaxWeight(double maxWeight) { this.maxWeight = maxWeight; }
+    public void setLatestDate(long latestDate) { this.latestDate = latestDate; }
+    public void setLatestWeight(double latestWeight) { this.latestWeight = latestWeight; }
+    public void setAverage7Day(double average7Day) { this.average7Day = average7Day; }
+    public void setAverage30Day(double average30Day) { this.average30Day = average30Day; }
+    public void setTrendWeight(double trendWeight) { this.trendWeight = trendWeight; }
+    public void setWeeklyRate(double weeklyRate) { this.weeklyRate = weeklyRate; }
+}
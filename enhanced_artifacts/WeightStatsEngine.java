@@ -0,0 +1,261 @@
+/**
+ * Christopher Carnell
+ *
+ * This class keeps each user's WeightStats current as entries are added and deleted.
+ * Count and sum are updated in constant time from the changed row, and so are the minimum, maximum and
+ * latest entry unless a delete removes the current one, which is then re-read with a single O(log n) seek
+ * on the (user_id, weight) or (user_id, date) index.
+ * The moving averages, 30-day smoothed weight and weekly rate are not incremental: they only depend on the
+ * last 30 days, so they are recomputed on every write from a date-bounded scan of the (user_id, date) index
+ * that reads at most a month of rows. The cost of a write therefore does not grow with the length of the
+ * user's history, but it does grow with the number of entries in the last month.
+ * Results are persisted in the user_stats table inside the caller's transaction.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Incrementally maintains the user_stats summary table.
+ */
+public class WeightStatsEngine {
+
+    private static final int SHORT_WINDOW_DAYS = 7;
+    private static final int LONG_WINDOW_DAYS = 30;
+
+    // Smoothing factor for the 30-day smoothed weight; 0.1 damps day-to-day water weight swings
+    private static final double WINDOW_SMOOTHING = 0.1;
+
+    /**
+     * Loads the stored stats for a user. If none are stored yet (e.g. right after the upgrade that
+     * added the table) they are computed from the entries but not persisted, so this is safe on a reader thread.
+     *
+     * @param db     The database.
+     * @param userId The user's ID.
+     * @return The user's stats; the entry count is 0 if the user has no entries.
+     */
+    public WeightStats load(SQLiteDatabase db, long userId) {
+        WeightStats stats = loadStored(db, userId);
+        return stats != null ? stats : compute(db, userId);
+    }
+
+    /**
+     * @return The persisted stats row for the user, or null if there is none.
+     */
+    private WeightStats loadStored(SQLiteDatabase db, long userId) {
+        String selection = DatabaseHelper.COLUMN_USER_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(userId)};
+
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_USER_STATS, null, selection, selectionArgs, null, null, null)) {
+            return RowMapper.mapFirst(cursor, new WeightStatsRowMapper());
+        }
+    }
+
+    /**
+     * Updates the stats after an entry was inserted. Must run inside the insert's transaction.
+     *
+     * @param db       The database.
+     * @param userId   The user's ID.
+     * @param epochDay The new entry's date.
+     * @param weight   The new entry's weight.
+     * @return The user's updated stats.
+     */
+    public WeightStats onEntryAdded(SQLiteDatabase db, long userId, long epochDay, double weight) {
+        WeightStats stats = loadStored(db, userId);
+
+        if (stats == null) {
+            // Nothing stored yet; computing from the table already includes the new row
+            stats = compute(db, userId);
+        } else {
+            stats.setEntryCount(stats.getEntryCount() + 1);
+            stats.setWeightSum(stats.getWeightSum() + weight);
+            stats.setMinWeight(Math.min(stats.getMinWeight(), weight));
+            stats.setMaxWeight(Math.max(stats.getMaxWeight(), weight));
+            if (epochDay >= stats.getLatestDate()) {
+                stats.setLatestDate(epochDay);
+                stats.setLatestWeight(weight);
+            }
+            refreshWindow(db, stats);
+        }
+        save(db, stats);
+        return stats;
+    }
+
+    /**
+     * Updates the stats after an entry was deleted. Must run inside the delete's transaction.
+     *
+     * @param db       The database.
+     * @param userId   The user's ID.
+     * @param epochDay The deleted entry's date.
+     * @param weight   The deleted entry's weight.
+     * @return The user's updated stats.
+     */
+    public WeightStats onEntryDeleted(SQLiteDatabase db, long userId, long epochDay, double weight) {
+        WeightStats stats = loadStored(db, userId);
+        if (stats == null || stats.getEntryCount() <= 1) {
+            // Nothing stored yet, or no entries left; the table already reflects the delete
+            stats = compute(db, userId);
+            save(db, stats);
+            return stats;
+        }
+
+        stats.setEntryCount(stats.getEntryCount() - 1);
+        stats.setWeightSum(stats.getWeightSum() - weight);
+
+        // The extremes can only change if the deleted row was one of them
+        if (weight <= stats.getMinWeight() || weight >= stats.getMaxWeight()) {
+            refreshExtremes(db, stats);
+        }
+        if (epochDay >= stats.getLatestDate()) {
+            refreshLatest(db, stats);
+        }
+        refreshWindow(db, stats);
+        save(db, stats);
+        return stats;
+    }
+
+    /**
+     * Recomputes and stores a user's stats from scratch, e.g. after a bulk import.
+     *
+     * @param db     The database.
+     * @param userId The user's ID.
+     * @return The user's rebuilt stats.
+     */
+    public WeightStats rebuild(SQLiteDatabase db, long userId) {
+        WeightStats stats = compute(db, userId);
+        save(db, stats);
+        return stats;
+    }
+
+    /**
+     * Computes a user's stats from the entries table.
+     */
+    private WeightStats compute(SQLiteDatabase db, long userId) {
+        WeightStats stats = new WeightStats(userId);
+        String sql = "SELECT COUNT(*), TOTAL(" + DatabaseHelper.COLUMN_WEIGHT + "), MIN(" + DatabaseHelper.COLUMN_WEIGHT + "), MAX(" + DatabaseHelper.COLUMN_WEIGHT + ")"
+                + " FROM " + DatabaseHelper.TABLE_ENTRIES + " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?";
+
+        try (Cursor cursor = db.rawQuery(sql, new String[]{String.valueOf(userId)})) {
+            if (cursor != null && cursor.moveToFirst()) {
+                stats.setEntryCount(cursor.getInt(0));
+                stats.setWeightSum(cursor.getDouble(1));
+                stats.setMinWeight(cursor.getDouble(2));
+                stats.setMaxWeight(cursor.getDouble(3));
+            }
+        }
+        if (stats.getEntryCount() > 0) {
+            refreshLatest(db, stats);
+            refreshWindow(db, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Reloads the minimum and maximum weight, each with a single seek on the (user_id, weight) index.
+     */
+    private void refreshExtremes(SQLiteDatabase db, WeightStats stats) {
+        stats.setMinWeight(extremeWeight(db, stats.getUserId(), "ASC", stats.getMinWeight()));
+        stats.setMaxWeight(extremeWeight(db, stats.getUserId(), "DESC", stats.getMaxWeight()));
+    }
+
+    private double extremeWeight(SQLiteDatabase db, long userId, String direction, double fallback) {
+        String[] columns = {DatabaseHelper.COLUMN_WEIGHT};
+        String selection = DatabaseHelper.COLUMN_USER_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(userId)};
+        String orderBy = DatabaseHelper.COLUMN_WEIGHT + " " + direction;
+
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_ENTRIES, columns, selection, selectionArgs, null, null, orderBy, "1")) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getDouble(0);
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Reloads the latest entry, which the goal check is judged against, with a single index seek.
+     */
+    private void refreshLatest(SQLiteDatabase db, WeightStats stats) {
+        WeightEntry latest = WeightEntryQueries.latest(db, stats.getUserId());
+        if (latest != null) {
+            stats.setLatestDate(latest.getEpochDay());
+            stats.setLatestWeight(latest.getWeight());
+        }
+    }
+
+    /**
+     * Recomputes the window-based figures from the entries of the last 30 days before the latest entry.
+     * The smoothed weight (stored as the trend weight) is exponential smoothing over the window only,
+     * restarted from the oldest entry in the window on every call, so it is not a running average over the
+     * whole history. The weekly rate is the least-squares slope of weight over time, scaled to seven days.
+     */
+    private void refreshWindow(SQLiteDatabase db, WeightStats stats) {
+        long latestDate = stats.getLatestDate();
+        String[] columns = {DatabaseHelper.COLUMN_DATE, DatabaseHelper.COLUMN_WEIGHT};
+        String selection = DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_DATE + " > ?";
+        String[] selectionArgs = {String.valueOf(stats.getUserId()), String.valueOf(latestDate - LONG_WINDOW_DAYS)};
+        String orderBy = DatabaseHelper.COLUMN_DATE + " ASC, " + DatabaseHelper.COLUMN_ID + " ASC";
+
+        int shortCount = 0;
+        double shortSum = 0;
+        int longCount = 0;
+        double longSum = 0;
+        double smoothed = 0;
+        // Sums for the least-squares slope, with days measured relative to the latest date
+        double sumX = 0;
+        double sumXX = 0;
+        double sumXY = 0;
+
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_ENTRIES, columns, selection, selectionArgs, null, null, orderBy)) {
+            while (cursor != null && cursor.moveToNext()) {
+                long day = cursor.getLong(0);
+                double weight = cursor.getDouble(1);
+
+                smoothed = longCount == 0 ? weight : smoothed + WINDOW_SMOOTHING * (weight - smoothed);
+                longCount++;
+                longSum += weight;
+                if (day > latestDate - SHORT_WINDOW_DAYS) {
+                    shortCount++;
+                    shortSum += weight;
+                }
+
+                double x = day - latestDate;
+                sumX += x;
+                sumXX += x * x;
+                sumXY += x * weight;
+            }
+        }
+
+        stats.setAverage7Day(shortCount == 0 ? 0 : shortSum / shortCount);
+        stats.setAverage30Day(longCount == 0 ? 0 : longSum / longCount);
+        stats.setTrendWeight(smoothed);
+
+        double denominator = longCount * sumXX - sumX * sumX;
+        stats.setWeeklyRate(denominator == 0 ? 0 : 7 * (longCount * sumXY - sumX * longSum) / denominator);
+    }
+
+    private void save(SQLiteDatabase db, WeightStats stats) {
+        if (stats.getEntryCount() == 0) {
+            db.delete(DatabaseHelper.TABLE_USER_STATS, DatabaseHelper.COLUMN_USER_ID + " = ?",
+                    new String[]{String.valueOf(stats.getUserId())});
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_USER_ID, stats.getUserId());
+        values.put(DatabaseHelper.COLUMN_ENTRY_COUNT, stats.getEntryCount());
+        values.put(DatabaseHelper.COLUMN_WEIGHT_SUM, stats.getWeightSum());
+        values.put(DatabaseHelper.COLUMN_MIN_WEIGHT, stats.getMinWeight());
+        values.put(DatabaseHelper.COLUMN_MAX_WEIGHT, stats.getMaxWeight());
+        values.put(DatabaseHelper.COLUMN_LATEST_DATE, stats.getLatestDate());
+        values.put(DatabaseHelper.COLUMN_LATEST_WEIGHT, stats.getLatestWeight());
+        values.put(DatabaseHelper.COLUMN_AVERAGE_7_DAY, stats.getAverage7Day());
+        values.put(DatabaseHelper.COLUMN_AVERAGE_30_DAY, stats.getAverage30Day());
+        values.put(DatabaseHelper.COLUMN_TREND_WEIGHT, stats.getTrendWeight());
+        values.put(DatabaseHelper.COLUMN_WEEKLY_RATE, stats.getWeeklyRate());
+        db.insertWithOnConflict(DatabaseHelper.TABLE_USER_STATS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+}
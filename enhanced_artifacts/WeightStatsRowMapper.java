@@ -0,0 +1,58 @@
+/**
+ * Christopher Carnell
+ *
+ * This class maps rows of the user_stats table to WeightStats objects.
+ */
+
+package com.cs360.weightwatcher;
+
+import android.database.Cursor;
+
+/**
+ * Maps full rows of the user_stats table.
+ */
+public class WeightStatsRowMapper implements RowMapper<WeightStats> {
+
+    private int userIdIndex;
+    private int entryCountIndex;
+    private int weightSumIndex;
+    private int minWeightIndex;
+    private int maxWeightIndex;
+    private int latestDateIndex;
+    private int latestWeightIndex;
+    private int average7DayIndex;
+    private int average30DayIndex;
+    private int trendWeightIndex;
+    private int weeklyRateIndex;
+
+    @Override
+    public void bind(Cursor cursor) {
+        userIdIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USER_ID);
+        entryCountIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ENTRY_COUNT);
+        weightSumIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_WEIGHT_SUM);
+        minWeightIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_MIN_WEIGHT);
+        maxWeightIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_MAX_WEIGHT);
+        latestDateIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_LATEST_DATE);
+        latestWeightIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_LATEST_WEIGHT);
+        average7DayIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_AVERAGE_7_DAY);
+        average30DayIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_AVERAGE_30_DAY);
+        trendWeightIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TREND_WEIGHT);
+        weeklyRateIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_WEEKLY_RATE);
+    }
+
+    @Override
+    public WeightStats map(Cursor cursor) {
+        WeightStats stats = new WeightStats(cursor.getLong(userIdIndex));
+        stats.setEntryCount(cursor.getInt(entryCountIndex));
+        stats.setWeightSum(cursor.getDouble(weightSumIndex));
+        stats.setMinWeight(cursor.getDouble(minWeightIndex));
+        stats.setMaxWeight(cursor.getDouble(maxWeightIndex));
+        stats.setLatestDate(cursor.getLong(latestDateIndex));
+        stats.setLatestWeight(cursor.getDouble(latestWeightIndex));
+        stats.setAverage7Day(cursor.getDouble(average7DayIndex));
+        stats.setAverage30Day(cursor.getDouble(average30DayIndex));
+        stats.setTrendWeight(cursor.getDouble(trendWeightIndex));
+        stats.setWeeklyRate(cursor.getDouble(weeklyRateIndex));
+        return stats;
+    }
+}